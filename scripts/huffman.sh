@@ -2,11 +2,18 @@ MODE=""
 COMPRESSION_MODE="COMPRESS"
 DECOMPRESSION_MODE="DECOMPRESS"
 LOG4J_CONFIG_LOC="log4j2.xml"
+JAR_LOC="target/huffman-1.0.0.jar"
+CLASSPATH="$JAR_LOC:target/lib/*:lib/*"
+CDS_ARCHIVE_LOC="target/huffman.jsa"
+JAVA_OPTS=""
+VECTOR_OPTS=""
 
-if [ $# -ne 2 ]; then
-    echo "Invalid number of arguments, expect 3 arguments."
-    echo "For compression: ./huffman.sh [mode] [inputPath]"
-    echo "For decompression: ./huffman.sh [mode] [compressedPath]"
+if [ $# -lt 2 ]; then
+    echo "Invalid number of arguments, expect at least 2 arguments."
+    echo "For compression: ./huffman.sh [mode] [inputPath]..."
+    echo "For decompression: ./huffman.sh [mode] [compressedPath]..."
+    echo "Set HUFFMAN_CDS=true to launch with an AppCDS archive, which is created on the first such launch after each build."
+    echo "Set HUFFMAN_VECTOR=true to pack with the Vector API kernels of the incubating jdk.incubator.vector module."
 fi
 
 if [[ ${1^^} =~ $DECOMPRESSION_MODE ]]; then
@@ -18,7 +25,25 @@ else
     exit 1
 fi
 
-java -Dlog4j.configurationFile=$LOG4J_CONFIG_LOC -Dmode=$MODE \
-    -cp "target/huffman-1.0.0.jar:lib/*" com.qfi.huffman.HuffmanCode $2
+# Throughput optimized launch: resolve the incubating Vector API module and enable the encoder's kernels, which use
+# their own archive since an archive only maps into a JVM started with the same modules
+if [[ ${HUFFMAN_VECTOR,,} == "true" ]]; then
+    VECTOR_OPTS="--add-modules jdk.incubator.vector -Dhuffman.vector=true"
+    CDS_ARCHIVE_LOC="target/huffman-vector.jsa"
+fi
+
+# Startup optimized launch: map the application and log4j classes from an AppCDS archive instead of loading them
+if [[ ${HUFFMAN_CDS,,} == "true" ]]; then
+    # An archive older than the jar describes classes from a previous build, which the JVM silently ignores
+    if [ -f $CDS_ARCHIVE_LOC ] && ! [ $JAR_LOC -nt $CDS_ARCHIVE_LOC ]; then
+        JAVA_OPTS="-XX:SharedArchiveFile=$CDS_ARCHIVE_LOC -Xshare:auto"
+    else
+        rm -f $CDS_ARCHIVE_LOC
+        JAVA_OPTS="-XX:ArchiveClassesAtExit=$CDS_ARCHIVE_LOC -Xlog:cds=off"
+    fi
+fi
+
+java $JAVA_OPTS $VECTOR_OPTS -Dlog4j.configurationFile=$LOG4J_CONFIG_LOC -Dmode=$MODE \
+    -cp "$CLASSPATH" com.qfi.huffman.HuffmanCode "${@:2}"
 
 exit 0
@@ -1,8 +1,9 @@
 package com.qfi.huffman;
 
 import java.io.File;
-import org.apache.log4j.Logger;
-import org.apache.log4j.LogManager;
+import java.util.Arrays;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
 
 /**
  * This program is a Huffman Encoding Implementation using the HuffmanNode object. The program prompts the user to
@@ -20,6 +21,10 @@ import org.apache.log4j.LogManager;
  * associated with each character and the string based binary encoding that was used for that character. Once the map is
  * created, the statistics file will be deleted from the file system, the compressed file will be read completely and each
  * bit will be iterated over in order to determine the appropriate characters that need to be rewritten back to the file.
+ *
+ * MULTIPLE FILES:
+ * When more than one file path is provided, the files are handed to a HuffmanPipeline which overlaps counting the
+ * frequencies of one file with building the tree of another and encoding a third.
  * 
  * @author Vincent.Nigro
  * @version 1.0.0
@@ -33,23 +38,27 @@ public class HuffmanCode
 
 	public static void main(String[] args)
 	{
-		if (args.length != 1 || !isValidMode(MODE))
+		if (args.length < 1 || !isValidMode(MODE))
 		{
-			m_logger.error("Invalid arguments provided, expected exactly 1 argument & a valid mode.");
+			m_logger.error("Invalid arguments provided, expected at least 1 argument & a valid mode.");
 			m_logger.error("The mode should be set as a system property: -Dmode=\"COMPRESS\" or -Dmode=\"DECOMPRESS\"");
 			m_logger.error("The compressed file will be the same name as the initial input file but hidden: input.txt -> .input.txt");
-			m_logger.error("For compression: ./huffman [inputFile]");
-			m_logger.error("For decompression: ./huffman [compressedFile]");
+			m_logger.error("For compression: ./huffman [inputFile]...");
+			m_logger.error("For decompression: ./huffman [compressedFile]...");
 			return;
 		}
 
-		if (!isValidFile(args[0]))
+		for (String path : args)
 		{
-			m_logger.error("The file at path " + args[0] + " does not exist.");
-			return;
+			if (!isValidFile(path))
+			{
+				m_logger.error("The file at path " + path + " does not exist.");
+				return;
+			}
 		}
 
-		HuffmanExecution executor = new HuffmanExecution(MODE, args[0]);
+		// Multiple files are pipelined so that reading one file overlaps with encoding another
+		Runnable executor = (args.length == 1) ? new HuffmanExecution(MODE, args[0]) : new HuffmanPipeline(MODE, Arrays.asList(args));
 		Thread executorThread = new Thread(executor);
 		executorThread.start();
 	}
@@ -74,6 +83,6 @@ public class HuffmanCode
 	 */
 	private static boolean isValidMode(String mode)
 	{
-		return (mode.equalsIgnoreCase(COMPRESS) || mode.equalsIgnoreCase(DECOMPRESS));
+		return mode != null && (mode.equalsIgnoreCase(COMPRESS) || mode.equalsIgnoreCase(DECOMPRESS));
 	}
 }
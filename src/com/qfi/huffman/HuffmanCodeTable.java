@@ -0,0 +1,250 @@
+package com.qfi.huffman;
+
+import java.util.Arrays;
+
+/**
+ * The HuffmanCodeTable object holds the immutable lookup tables built from the string based codes of a Huffman tree.
+ * Encoding uses flat (code, length) arrays indexed by symbol and, optionally, the combined (code, length) of pairs of
+ * bytes. Decoding uses a flat array backed binary trie. Because a table is never modified once built, a single instance
+ * can be shared between any number of HuffmanEncoder and HuffmanDecoder objects and cached between files.
+ *
+ * When the "huffman.encoder.pair.bits" system property is set, tables built for encoding also precompute the combined
+ * code of every pair of bytes whose two codes fit within that many bits (at most 31). Pairs of frequent bytes have
+ * short codes, so on repetitive input most of the input is encoded two bytes per lookup.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public final class HuffmanCodeTable
+{
+	private static final int ROOT = 0;
+	private static final int ABSENT = 0;
+	private static final int MAX_PAIR_LENGTH = 31;
+
+	/**
+	 * The longest code supported, which leaves room in a 64 bit accumulator for 7 pending bits.
+	 */
+	public static final int MAX_CODE_LENGTH = 56;
+
+	/**
+	 * The pair length configured by the "huffman.encoder.pair.bits" system property, 0 when pairs are disabled.
+	 */
+	public static final int DEFAULT_PAIR_LENGTH = Math.max(0, Math.min(MAX_PAIR_LENGTH,
+		Integer.getInteger("huffman.encoder.pair.bits", 0)));
+
+	private final String[] m_codeStrings;
+	private final long[] m_codes;
+	private final int[] m_lengths;
+	private final int[] m_pairCodes;
+	private final byte[] m_pairLengths;
+	private final int[] m_trie;
+
+	/**
+	 * HuffmanCodeTable constructor without pair tables, as used for decoding.
+	 *
+	 * @param codes - The string based binary codes indexed by symbol, null for symbols which are not in the tree.
+	 */
+	public HuffmanCodeTable(String[] codes)
+	{
+		this(codes, 0);
+	}
+
+	/**
+	 * HuffmanCodeTable constructor.
+	 *
+	 * @param codes - The string based binary codes indexed by symbol, null for symbols which are not in the tree.
+	 * @param pairLength - The maximum combined length of a pair of byte codes to precompute, 0 to disable pairs.
+	 */
+	public HuffmanCodeTable(String[] codes, int pairLength)
+	{
+		if (pairLength < 0 || pairLength > MAX_PAIR_LENGTH)
+		{
+			throw new IllegalArgumentException("Pair length must be between 0 and " + MAX_PAIR_LENGTH + ": " + pairLength);
+		}
+
+		m_codeStrings = codes.clone();
+		m_codes = new long[codes.length];
+		m_lengths = new int[codes.length];
+
+		for (int i = 0; i < codes.length; i++)
+		{
+			if (codes[i] == null)
+			{
+				continue;
+			}
+
+			if (codes[i].isEmpty() || codes[i].length() > MAX_CODE_LENGTH)
+			{
+				throw new IllegalArgumentException("Code for symbol " + i + " must be between 1 and " + MAX_CODE_LENGTH
+					+ " bits: '" + codes[i] + "'");
+			}
+
+			m_lengths[i] = codes[i].length();
+			m_codes[i] = Long.parseLong(codes[i], 2);
+		}
+
+		if (pairLength > 0 && codes.length >= 256)
+		{
+			m_pairCodes = new int[256 * 256];
+			m_pairLengths = new byte[256 * 256];
+			buildPairTable(pairLength);
+		}
+		else
+		{
+			m_pairCodes = null;
+			m_pairLengths = null;
+		}
+
+		m_trie = buildTrie(codes);
+	}
+
+	/**
+	 * Accessor for the string based code of a symbol.
+	 *
+	 * @param symbol - The symbol.
+	 * @return String - The code of the symbol or null if the symbol is not in the table.
+	 */
+	public String getCode(int symbol)
+	{
+		return m_codeStrings[symbol];
+	}
+
+	/**
+	 * Accessor for the code length of a symbol.
+	 *
+	 * @param symbol - The symbol.
+	 * @return int - The length of the code of the symbol, 0 if the symbol is not in the table.
+	 */
+	public int getLength(int symbol)
+	{
+		return m_lengths[symbol];
+	}
+
+	/**
+	 * Accessor for the number of symbols the table is indexed by.
+	 *
+	 * @return int
+	 */
+	public int getSymbolCount()
+	{
+		return m_codeStrings.length;
+	}
+
+	/**
+	 * Checks and returns a flag representing if the table has pair entries.
+	 *
+	 * @return boolean
+	 */
+	public boolean hasPairs()
+	{
+		return m_pairLengths != null;
+	}
+
+	long[] codes()
+	{
+		return m_codes;
+	}
+
+	int[] lengths()
+	{
+		return m_lengths;
+	}
+
+	int[] pairCodes()
+	{
+		return m_pairCodes;
+	}
+
+	byte[] pairLengths()
+	{
+		return m_pairLengths;
+	}
+
+	/**
+	 * Accessor for the decoding trie. Children are stored in pairs, so the children of node n are at 2n and 2n + 1.
+	 * Positive values are node indices, negative values are -(symbol + 1) and 0 marks a missing child.
+	 *
+	 * @return int[]
+	 */
+	int[] trie()
+	{
+		return m_trie;
+	}
+
+	/**
+	 * Fills the pair tables, indexed by (first byte << 8 | second byte), for every pair of bytes which both have codes
+	 * and whose combined code length is at most the provided length. Pairs without an entry keep a length of 0.
+	 *
+	 * @param pairLength - The maximum combined code length of a pair.
+	 */
+	private void buildPairTable(int pairLength)
+	{
+		for (int first = 0; first < 256; first++)
+		{
+			if (m_lengths[first] == 0 || m_lengths[first] >= pairLength)
+			{
+				continue;
+			}
+
+			for (int second = 0; second < 256; second++)
+			{
+				int length = m_lengths[first] + m_lengths[second];
+
+				if (m_lengths[second] != 0 && length <= pairLength)
+				{
+					int pair = (first << 8) | second;
+					m_pairCodes[pair] = (int) ((m_codes[first] << m_lengths[second]) | m_codes[second]);
+					m_pairLengths[pair] = (byte) length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the decoding trie from the string based codes.
+	 *
+	 * @param codes - The string based binary codes indexed by symbol.
+	 * @return int[] - The trie, see {@link #trie()} for the layout.
+	 */
+	private static int[] buildTrie(String[] codes)
+	{
+		int nodes = 1;
+		int[] trie = new int[64];
+
+		for (int symbol = 0; symbol < codes.length; symbol++)
+		{
+			String code = codes[symbol];
+			int node = ROOT;
+
+			for (int i = 0; code != null && i < code.length(); i++)
+			{
+				int slot = 2 * node + (code.charAt(i) == '1' ? 1 : 0);
+
+				if (trie[slot] < 0 || (i == code.length() - 1 && trie[slot] != ABSENT))
+				{
+					throw new IllegalArgumentException("Code " + code + " of symbol " + symbol + " is not prefix free.");
+				}
+
+				if (i == code.length() - 1)
+				{
+					trie[slot] = -(symbol + 1);
+					break;
+				}
+
+				if (trie[slot] == ABSENT)
+				{
+					if (2 * nodes + 2 > trie.length)
+					{
+						trie = Arrays.copyOf(trie, trie.length * 2);
+					}
+
+					trie[slot] = nodes++;
+				}
+
+				node = trie[slot];
+			}
+		}
+
+		return trie;
+	}
+}
@@ -0,0 +1,118 @@
+package com.qfi.huffman;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The HuffmanDecoder object unpacks Huffman codes from bytes. It walks the flat array backed binary trie of a
+ * HuffmanCodeTable, so each compressed bit costs a single array lookup instead of growing and hashing a String of the
+ * code read so far. The trie is immutable and shared, only the position within it belongs to the decoder.
+ *
+ * The decoder reads from and writes to caller supplied ByteBuffers, which may be direct buffers owned by an NIO server,
+ * and does not allocate memory per call. Decoding stops once the end of file symbol is decoded.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanDecoder
+{
+	private static final int ABSENT = 0;
+	private static final int ROOT = 0;
+
+	private int m_node = ROOT;
+	private int m_bitIndex = 8;
+	private byte m_current = 0;
+	private boolean m_finished = false;
+	private final int[] m_trie;
+	private final int m_endSymbol;
+
+	/**
+	 * HuffmanDecoder constructor.
+	 *
+	 * @param table - The code table to decode with.
+	 * @param endSymbol - The symbol which marks the end of the compressed data.
+	 */
+	public HuffmanDecoder(HuffmanCodeTable table, int endSymbol)
+	{
+		m_trie = table.trie();
+		m_endSymbol = endSymbol;
+	}
+
+	/**
+	 * Decodes bits from the source buffer into symbols written to the destination buffer until the end of file
+	 * symbol is decoded, the source is exhausted or the destination is full. Both positions are advanced past the
+	 * bytes consumed and produced, and a partially decoded code is carried over to the next call.
+	 *
+	 * @param src - The buffer of compressed bytes.
+	 * @param dst - The buffer the decoded bytes are written to.
+	 * @return boolean - A flag representing if the end of file symbol has been decoded.
+	 */
+	public boolean decode(ByteBuffer src, ByteBuffer dst)
+	{
+		int node = m_node;
+		int bitIndex = m_bitIndex;
+		byte current = m_current;
+
+		while (!m_finished)
+		{
+			if (bitIndex == 8)
+			{
+				if (!src.hasRemaining())
+				{
+					break;
+				}
+
+				current = src.get();
+				bitIndex = 0;
+			}
+
+			int next = m_trie[2 * node + ((current >> (7 - bitIndex)) & 1)];
+
+			if (next == ABSENT)
+			{
+				throw new IllegalStateException("Compressed data contains a code which is not in the table.");
+			}
+
+			if (next < 0)
+			{
+				int symbol = -next - 1;
+
+				if (symbol == m_endSymbol)
+				{
+					m_finished = true;
+				}
+				else if (dst.hasRemaining())
+				{
+					dst.put((byte) symbol);
+				}
+				else
+				{
+					break;
+				}
+
+				node = ROOT;
+			}
+			else
+			{
+				node = next;
+			}
+
+			bitIndex++;
+		}
+
+		m_node = node;
+		m_bitIndex = bitIndex;
+		m_current = current;
+
+		return m_finished;
+	}
+
+	/**
+	 * Accessor for the finished property.
+	 *
+	 * @return boolean - A flag representing if the end of file symbol has been decoded.
+	 */
+	public boolean isFinished()
+	{
+		return m_finished;
+	}
+}
@@ -0,0 +1,442 @@
+package com.qfi.huffman;
+
+import java.nio.ByteOrder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.io.OutputStream;
+
+/**
+ * The HuffmanEncoder object packs Huffman codes into bytes. The string based codes generated from the Huffman tree are
+ * gathered once into flat (code, length) tables indexed by symbol, so encoding a symbol is a single table lookup
+ * followed by a single update of a 64 bit accumulator.
+ *
+ * The encoder can be driven directly with caller supplied ByteBuffers, which may be direct buffers owned by an NIO
+ * server, in which case no memory is allocated per call. When constructed with an OutputStream the encoder packs into
+ * an internal buffer which is written to the stream in bulk, and only then can the methods without a destination buffer
+ * be used. The tables are immutable and shared, only the accumulator belongs to the encoder.
+ *
+ * When the table was built with pair entries, most of a repetitive input is encoded two bytes per lookup and
+ * accumulator update, falling back to single bytes for pairs without an entry. The packed output is identical either
+ * way.
+ *
+ * When the "huffman.vector" system property is set and the JVM was started with --add-modules jdk.incubator.vector,
+ * bytes are encoded a block at a time ahead of the pair and single byte loops, which then only encode the bytes left
+ * once less than a block remains or the destination is nearly full. The code lengths of a block are gathered with the
+ * Vector API kernel of HuffmanVectorKernels and, when none is longer than 32 bits, the codes are packed with 32 bit
+ * stores. Without the module only the scalar loops are used. The packed output is identical either way.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanEncoder
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The number of bytes a destination buffer must have remaining to accept a symbol, which covers up to 7 pending
+	 * bits plus a code of the maximum length.
+	 */
+	public static final int MAX_SYMBOL_BYTES = (7 + HuffmanCodeTable.MAX_CODE_LENGTH) / 8 + 1;
+
+	/**
+	 * A flag representing if the Vector API kernels are enabled by the "huffman.vector" system property and the
+	 * jdk.incubator.vector module is present, which is checked before HuffmanVectorKernels is loaded.
+	 */
+	static final boolean VECTORIZED = Boolean.getBoolean("huffman.vector")
+		&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	private long m_bits = 0;
+	private int m_bitCount = 0;
+	private long m_written = 0;
+	private final long[] m_codes;
+	private final int[] m_lengths;
+	private final int[] m_pairCodes;
+	private final byte[] m_pairLengths;
+	private final OutputStream m_out;
+	private final ByteBuffer m_buffer;
+	private final int m_blockSize;
+	private final int[] m_blockSymbols;
+	private final int[] m_blockLengths;
+
+	/**
+	 * HuffmanEncoder constructor for encoding between caller supplied ByteBuffers.
+	 *
+	 * @param table - The code table to encode with.
+	 */
+	public HuffmanEncoder(HuffmanCodeTable table)
+	{
+		this(table, null);
+	}
+
+	/**
+	 * HuffmanEncoder constructor for encoding into an OutputStream.
+	 *
+	 * @param table - The code table to encode with.
+	 * @param out - The output stream the packed bytes are written to.
+	 */
+	public HuffmanEncoder(HuffmanCodeTable table, OutputStream out)
+	{
+		this(table, out, VECTORIZED);
+	}
+
+	/**
+	 * HuffmanEncoder constructor which chooses between the Vector API kernels and the scalar loop, so both can be
+	 * compared within the same JVM.
+	 *
+	 * @param table - The code table to encode with.
+	 * @param out - The output stream the packed bytes are written to, null to encode between ByteBuffers.
+	 * @param vectorized - A flag representing if the Vector API kernels are used, which requires the module.
+	 */
+	HuffmanEncoder(HuffmanCodeTable table, OutputStream out, boolean vectorized)
+	{
+		m_out = out;
+		m_buffer = (out == null) ? null : ByteBuffer.allocate(BUFFER_SIZE);
+		m_codes = table.codes();
+		m_lengths = table.lengths();
+		m_pairCodes = table.pairCodes();
+		m_pairLengths = table.pairLengths();
+
+		// The kernel gathers the length of any byte value, so tables built for fewer symbols use the scalar loops
+		boolean blocks = vectorized && m_lengths.length >= 256;
+		m_blockSize = blocks ? HuffmanVectorKernels.BLOCK_SIZE : 0;
+		m_blockSymbols = blocks ? new int[m_blockSize] : null;
+		m_blockLengths = blocks ? new int[m_blockSize] : null;
+	}
+
+	/**
+	 * Encodes a range of the provided byte array into the output stream.
+	 *
+	 * @param src - The array of uncompressed bytes.
+	 * @param offset - The index of the first byte to encode.
+	 * @param length - The number of bytes to encode.
+	 * @throws IOException - If writing to the output fails.
+	 * @throws IllegalStateException - If the encoder has no output stream or a byte has no code in the table.
+	 */
+	public void encode(byte[] src, int offset, int length) throws IOException
+	{
+		checkStream();
+
+		ByteBuffer in = ByteBuffer.wrap(src, offset, length);
+		encode(in, m_buffer);
+
+		while (in.hasRemaining())
+		{
+			drain();
+			encode(in, m_buffer);
+		}
+	}
+
+	/**
+	 * Encodes bytes from the source buffer into the destination buffer until the source is exhausted or the
+	 * destination has fewer than MAX_SYMBOL_BYTES remaining. Both positions are advanced past the bytes consumed and
+	 * produced, and any bits which do not yet fill a byte are carried over to the next call. A byte which has no code
+	 * in the table fails the encoding, after which the encoder must not be used again.
+	 *
+	 * @param src - The buffer of uncompressed bytes.
+	 * @param dst - The buffer the packed bytes are written to.
+	 * @throws IllegalStateException - If a byte has no code in the table.
+	 */
+	public void encode(ByteBuffer src, ByteBuffer dst)
+	{
+		if (m_blockSize > 0)
+		{
+			encodeBlocks(src, dst);
+		}
+
+		if (m_pairLengths != null)
+		{
+			encodePairs(src, dst);
+		}
+
+		long bits = m_bits;
+		int bitCount = m_bitCount;
+		int start = dst.position();
+
+		while (src.hasRemaining() && dst.remaining() >= MAX_SYMBOL_BYTES)
+		{
+			int symbol = src.get() & 0xFF;
+			int length = m_lengths[symbol];
+
+			if (length == 0)
+			{
+				throw missingCode(symbol);
+			}
+
+			bits = (bits << length) | m_codes[symbol];
+			bitCount += length;
+
+			while (bitCount >= 8)
+			{
+				bitCount -= 8;
+				dst.put((byte) (bits >>> bitCount));
+			}
+		}
+
+		m_bits = bits;
+		m_bitCount = bitCount;
+		m_written += dst.position() - start;
+	}
+
+	/**
+	 * Encodes bytes from the source buffer two at a time wherever the pair has an entry in the pair tables, otherwise
+	 * one at a time, until fewer than two bytes remain or the destination has fewer than MAX_SYMBOL_BYTES remaining.
+	 *
+	 * @param src - The buffer of uncompressed bytes.
+	 * @param dst - The buffer the packed bytes are written to.
+	 */
+	private void encodePairs(ByteBuffer src, ByteBuffer dst)
+	{
+		long bits = m_bits;
+		int bitCount = m_bitCount;
+		int start = dst.position();
+		int position = src.position();
+		int last = src.limit() - 1;
+
+		while (position < last && dst.remaining() >= MAX_SYMBOL_BYTES)
+		{
+			int pair = ((src.get(position) & 0xFF) << 8) | (src.get(position + 1) & 0xFF);
+			int length = m_pairLengths[pair];
+
+			if (length != 0)
+			{
+				bits = (bits << length) | m_pairCodes[pair];
+				bitCount += length;
+				position += 2;
+			}
+			else
+			{
+				int symbol = pair >>> 8;
+				length = m_lengths[symbol];
+
+				if (length == 0)
+				{
+					throw missingCode(symbol);
+				}
+
+				bits = (bits << length) | m_codes[symbol];
+				bitCount += length;
+				position++;
+			}
+
+			while (bitCount >= 8)
+			{
+				bitCount -= 8;
+				dst.put((byte) (bits >>> bitCount));
+			}
+		}
+
+		src.position(position);
+		m_bits = bits;
+		m_bitCount = bitCount;
+		m_written += dst.position() - start;
+	}
+
+	/**
+	 * Encodes bytes from the source buffer a block at a time, until less than a block remains or the destination may
+	 * not have room for a block of the longest codes. The code lengths of each block are gathered by the Vector API
+	 * kernel, which also finds the longest of them. When none is longer than 32 bits the accumulator, which holds fewer
+	 * than 32 pending bits, is flushed 32 bits at a time, otherwise a byte at a time as in the scalar loop.
+	 *
+	 * @param src - The buffer of uncompressed bytes.
+	 * @param dst - The buffer the packed bytes are written to.
+	 */
+	private void encodeBlocks(ByteBuffer src, ByteBuffer dst)
+	{
+		long bits = m_bits;
+		int bitCount = m_bitCount;
+		int start = dst.position();
+		int position = src.position();
+		int maxBlockBytes = m_blockSize * HuffmanCodeTable.MAX_CODE_LENGTH / 8 + MAX_SYMBOL_BYTES;
+		boolean bigEndian = dst.order() == ByteOrder.BIG_ENDIAN;
+
+		while (src.limit() - position >= m_blockSize && dst.remaining() >= maxBlockBytes)
+		{
+			int longest = HuffmanVectorKernels.gatherLengths(src, position, m_lengths, m_blockSymbols, m_blockLengths);
+
+			if (longest == 0)
+			{
+				for (int i = 0; i < m_blockSize; i++)
+				{
+					if (m_blockLengths[i] == 0)
+					{
+						throw missingCode(m_blockSymbols[i]);
+					}
+				}
+			}
+
+			if (longest <= 32)
+			{
+				for (int i = 0; i < m_blockSize; i++)
+				{
+					bits = (bits << m_blockLengths[i]) | m_codes[m_blockSymbols[i]];
+					bitCount += m_blockLengths[i];
+
+					if (bitCount >= 32)
+					{
+						bitCount -= 32;
+						int word = (int) (bits >>> bitCount);
+						dst.putInt(bigEndian ? word : Integer.reverseBytes(word));
+					}
+				}
+			}
+			else
+			{
+				for (int i = 0; i < m_blockSize; i++)
+				{
+					bits = (bits << m_blockLengths[i]) | m_codes[m_blockSymbols[i]];
+					bitCount += m_blockLengths[i];
+
+					while (bitCount >= 8)
+					{
+						bitCount -= 8;
+						dst.put((byte) (bits >>> bitCount));
+					}
+				}
+			}
+
+			// The scalar loop and the next block expect fewer than 8 pending bits
+			while (bitCount >= 8)
+			{
+				bitCount -= 8;
+				dst.put((byte) (bits >>> bitCount));
+			}
+
+			position += m_blockSize;
+		}
+
+		src.position(position);
+		m_bits = bits;
+		m_bitCount = bitCount;
+		m_written += dst.position() - start;
+	}
+
+	/**
+	 * Encodes a single symbol into the output stream, used for symbols such as the end of file marker which are not
+	 * read from the input.
+	 *
+	 * @param symbol - The symbol to encode.
+	 * @throws IOException - If writing to the output fails.
+	 * @throws IllegalStateException - If the encoder has no output stream or the symbol has no code in the table.
+	 */
+	public void encodeSymbol(int symbol) throws IOException
+	{
+		checkStream();
+
+		if (m_buffer.remaining() < MAX_SYMBOL_BYTES)
+		{
+			drain();
+		}
+
+		encodeSymbol(symbol, m_buffer);
+	}
+
+	/**
+	 * Encodes a single symbol into the destination buffer.
+	 *
+	 * @param symbol - The symbol to encode.
+	 * @param dst - The buffer the packed bytes are written to, which must have MAX_SYMBOL_BYTES remaining.
+	 * @throws IllegalStateException - If the symbol has no code in the table.
+	 */
+	public void encodeSymbol(int symbol, ByteBuffer dst)
+	{
+		if (m_lengths[symbol] == 0)
+		{
+			throw missingCode(symbol);
+		}
+
+		int start = dst.position();
+		m_bits = (m_bits << m_lengths[symbol]) | m_codes[symbol];
+		m_bitCount += m_lengths[symbol];
+
+		while (m_bitCount >= 8)
+		{
+			m_bitCount -= 8;
+			dst.put((byte) (m_bits >>> m_bitCount));
+		}
+
+		m_written += dst.position() - start;
+	}
+
+	/**
+	 * Accessor for the total number of bits encoded so far, including bits which have not yet been written.
+	 *
+	 * @return long
+	 */
+	public long getEncodedBits()
+	{
+		return m_written * 8 + m_bitCount;
+	}
+
+	/**
+	 * Writes any remaining bits as a final zero padded byte and flushes the buffered bytes to the output stream.
+	 *
+	 * @throws IOException - If writing to the output fails.
+	 * @throws IllegalStateException - If the encoder has no output stream.
+	 */
+	public void finish() throws IOException
+	{
+		checkStream();
+
+		if (!m_buffer.hasRemaining())
+		{
+			drain();
+		}
+
+		finish(m_buffer);
+		drain();
+		m_out.flush();
+	}
+
+	/**
+	 * Writes any remaining bits into the destination buffer as a final zero padded byte.
+	 *
+	 * @param dst - The buffer the final byte is written to, which must have at least one byte remaining.
+	 */
+	public void finish(ByteBuffer dst)
+	{
+		if (m_bitCount > 0)
+		{
+			dst.put((byte) (m_bits << (8 - m_bitCount)));
+			m_bitCount = 0;
+			m_written++;
+		}
+	}
+
+	/**
+	 * Checks that the encoder was constructed with an OutputStream, which the methods without a destination buffer
+	 * write to.
+	 *
+	 * @throws IllegalStateException - If the encoder encodes between caller supplied ByteBuffers.
+	 */
+	private void checkStream()
+	{
+		if (m_out == null)
+		{
+			throw new IllegalStateException("The encoder has no output stream, encode into a ByteBuffer instead.");
+		}
+	}
+
+	/**
+	 * Builds the exception thrown for a symbol which has no code in the table. Skipping the symbol instead would
+	 * silently produce output which does not decode to the input, for example when a file grows between the histogram
+	 * and the encoding of it.
+	 *
+	 * @param symbol - The symbol without a code.
+	 * @return IllegalStateException
+	 */
+	private static IllegalStateException missingCode(int symbol)
+	{
+		return new IllegalStateException("Symbol " + symbol + " has no code in the table.");
+	}
+
+	/**
+	 * Writes the packed bytes of the internal buffer to the output stream.
+	 *
+	 * @throws IOException - If writing to the output fails.
+	 */
+	private void drain() throws IOException
+	{
+		m_out.write(m_buffer.array(), 0, m_buffer.position());
+		m_buffer.clear();
+	}
+}
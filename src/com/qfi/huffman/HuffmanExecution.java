@@ -1,22 +1,27 @@
 package com.qfi.huffman;
 
 import java.io.File;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.io.FileWriter;
-import java.io.FileReader;
-import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.Files;
+import java.io.OutputStream;
 import java.util.Collections;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import org.apache.log4j.Logger;
 import java.util.PriorityQueue;
-import java.io.FileOutputStream;
-import org.apache.log4j.LogManager;
-import java.io.BufferedOutputStream;
+import java.nio.file.LinkOption;
+import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
+import org.apache.logging.log4j.Logger;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import org.apache.logging.log4j.LogManager;
+import java.nio.file.AtomicMoveNotSupportedException;
 
 /**
  *
@@ -26,12 +31,27 @@ import java.io.BufferedOutputStream;
 public class HuffmanExecution implements Runnable
 {
 	private String m_mode;
+	private int[] m_counts;
 	private String m_inputPath;
+	private HuffmanCodeTable m_table;
+	private boolean m_sampled;
+	private long[] m_sampleEnds;
+	private long[][] m_sampleCounts;
+	private double m_sampleRatio = SAMPLE_RATIO;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int SAMPLE_REGIONS = 16;
+	private static final int SAMPLE_CHUNK_SIZE = 4 * 1024;
+	private static final double SAMPLE_RATIO = Double.parseDouble(System.getProperty("huffman.sample.ratio", "0"));
+	private static final double DRIFT_THRESHOLD = Double.parseDouble(System.getProperty("huffman.sample.drift", "0.15"));
 	private static final String SPACE_REGEX = "\\s+";
 	private static final String COMPRESS = "COMPRESS";
+	private static final int END_OF_FILE = 256;
+	private static final int SYMBOL_COUNT = END_OF_FILE + 1;
+	private static final String TEMP_SUFFIX = ".tmp";
 	private static final String STATISTICS_APPEND = ".";
 	private static final String DECOMPRESS = "DECOMPRESS";
 	private static final Logger m_logger = LogManager.getLogger(HuffmanExecution.class);
+	private static final HuffmanTableCache m_tableCache = HuffmanTableCache.getInstance();
 
 	/**
 	 *
@@ -54,6 +74,36 @@ public class HuffmanExecution implements Runnable
 		}
 	}
 
+	/**
+	 * Accessor for the mode property.
+	 *
+	 * @return String
+	 */
+	public String getMode()
+	{
+		return m_mode;
+	}
+
+	/**
+	 * Accessor for the input path property.
+	 *
+	 * @return String
+	 */
+	public String getInputPath()
+	{
+		return m_inputPath;
+	}
+
+	/**
+	 * Mutator for the sample ratio property, which defaults to the "huffman.sample.ratio" system property.
+	 *
+	 * @param sampleRatio - The fraction of the input file to sample, 0 to count every byte.
+	 */
+	void setSampleRatio(double sampleRatio)
+	{
+		m_sampleRatio = sampleRatio;
+	}
+
 	/**
 	 *
 	 */
@@ -63,94 +113,176 @@ public class HuffmanExecution implements Runnable
 		if (m_mode.equalsIgnoreCase(COMPRESS))
 		{
 			compress();
-			return;
+		}
+		else
+		{
+			decompress();
 		}
 
-		decompress();
+		m_logger.debug("Table cache hits: " + m_tableCache.getHits() + ", misses: " + m_tableCache.getMisses());
 	}
 
 	private void compress()
+	{
+		countFrequencies();
+		buildCodes();
+		writeCompressedFile();
+	}
+
+	/**
+	 * The first compression stage, which counts or samples the character frequencies of the input file.
+	 */
+	void countFrequencies()
 	{
 		m_logger.info("Beginning compression of file at path " + m_inputPath + ".");
 
-		//compression
 		File inputFile = new File(m_inputPath);
 
-		int[] counts = getCharFrequencies(inputFile);
-
-		HuffmanNode root = generateTree(counts);
-		String[] codes = getCode(root);
+		m_sampled = isSampled(inputFile);
+		m_counts = m_sampled ? estimateCharFrequencies(inputFile) : getCharFrequencies(inputFile);
+	}
 
-		m_logger.info("Creating hidden statistics file.");
+	/**
+	 * The second compression stage, which builds the Huffman tree and code table from the character frequencies.
+	 */
+	void buildCodes()
+	{
+		// Building the tree is cheap, the code lengths it gives select a cached table of the canonical codes
+		int[] codeLengths = getCodeLengths(getCode(generateTree(m_counts)));
 
-		String statPath;
-		int lastSepIndex = m_inputPath.lastIndexOf(File.separator);
+		m_table = m_tableCache.getEncodeTable(codeLengths);
 
-		if (lastSepIndex != -1)
+		if (m_table == null)
 		{
-			statPath = m_inputPath.substring(0, lastSepIndex) + STATISTICS_APPEND + m_inputPath.substring(lastSepIndex, m_inputPath.length() - 1);
+			m_table = new HuffmanCodeTable(getCanonicalCode(codeLengths), HuffmanCodeTable.DEFAULT_PAIR_LENGTH);
+			m_tableCache.putEncodeTable(codeLengths, m_table);
 		}
 		else
 		{
-			statPath = STATISTICS_APPEND + m_inputPath;
+			m_logger.debug("Reusing cached code table for identical code lengths.");
 		}
+	}
 
-		m_logger.debug("Statistics file path: " + statPath);
+	/**
+	 * The final compression stage, which encodes the input file into a temporary file, writes the statistics file and
+	 * moves the temporary file over the input file.
+	 */
+	void writeCompressedFile()
+	{
+		File inputFile = new File(m_inputPath);
+		Path compressedPath;
 
-		//
-		m_logger.debug("Creating statistics file.");
-		try (BufferedWriter bw = new BufferedWriter(new FileWriter(statPath)))
+		m_logger.debug("Creating compressed file.");
+
+		try
 		{
-			createStatFile(root, bw);
+			compressedPath = createTempFile(inputFile);
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			return;
 		}
 
+		double[] maxBitsPerByte = m_sampled ? getDriftLimits(m_table) : null;
 
-		m_logger.debug("Creating compressed file.");
-
-		char character;
-		HuffmanNode temp = root;
-		StringBuilder sb = new StringBuilder();
-
-		//
-		try (BufferedReader inputStream = new BufferedReader(new FileReader(inputFile)))
+		// The compressed output is streamed to the temporary file so the input is untouched until it is complete
+		try
 		{
-			while ((character = (char) inputStream.read()) != (char) -1)
-			{
-				HuffmanNode n = inOrderSearch(temp, character);
-
-				if (n != null)
-				{
-					sb.append(n.getCode());
-				}
-			}
-
-			HuffmanNode end = inOrderSearch(temp, (char) 0);
-
-			if (end != null)
+			if (!createCompressedFile(m_table, maxBitsPerByte, inputFile, compressedPath))
 			{
-				sb.append(end.getCode());
+				m_logger.info("Code cost drifted past the sampled estimate, rebuilding the table from a full scan.");
+				m_counts = getCharFrequencies(inputFile);
+				buildCodes();
+				createCompressedFile(m_table, null, inputFile, compressedPath);
 			}
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			deleteQuietly(compressedPath);
+			return;
 		}
 
-		//
-		try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(inputFile)))
+		m_logger.info("Creating hidden statistics file.");
+
+		String statPath = getStatPath(inputFile);
+
+		m_logger.debug("Statistics file path: " + statPath);
+
+		// The input is only replaced once the statistics needed to decompress it have been written
+		m_logger.debug("Creating statistics file.");
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(statPath)))
 		{
-			createCompressedFile(sb, bos);
+			createStatFile(m_counts, m_table, bw);
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			deleteStatFile(statPath);
+			deleteQuietly(compressedPath);
+			return;
+		}
+
+		if (!replaceFile(compressedPath, inputFile))
+		{
+			deleteStatFile(statPath);
+			deleteQuietly(compressedPath);
+		}
+	}
+
+	/**
+	 * Deletes a statistics file left behind by a compression which did not replace its input. Anything other than a
+	 * regular file at the statistics path, such as a directory, was not written by this execution and is left alone.
+	 *
+	 * @param statPath - The path of the statistics file.
+	 */
+	private static void deleteStatFile(String statPath)
+	{
+		Path path = Paths.get(statPath);
+
+		if (Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+		{
+			deleteQuietly(path);
 		}
 	}
 
+	/**
+	 * Returns the path of the hidden statistics file for the provided file, which is the same name prefixed with a
+	 * period within the same directory: dir/input.txt -> dir/.input.txt
+	 *
+	 * @param file - The uncompressed or compressed file.
+	 * @return String - The path of the statistics file.
+	 */
+	private static String getStatPath(File file)
+	{
+		return new File(file.getAbsoluteFile().getParentFile(), STATISTICS_APPEND + file.getName()).getPath();
+	}
+
+	/**
+	 * Checks and returns a flag representing if the frequencies of the provided file should be estimated from a sample.
+	 * Sampling is enabled with the sample ratio property and only applies when the sample would read less than the
+	 * entire file.
+	 *
+	 * @param inputFile - The uncompressed input file.
+	 * @return boolean - A flag representing if the frequencies should be sampled.
+	 */
+	private boolean isSampled(File inputFile)
+	{
+		return m_sampleRatio > 0 && m_sampleRatio < 1 && getSampleChunkCount(inputFile.length()) * SAMPLE_CHUNK_SIZE < inputFile.length();
+	}
+
+	/**
+	 * Returns the number of evenly strided chunks read when sampling a file of the provided length.
+	 *
+	 * @param fileLength - The length of the file in bytes.
+	 * @return long - The number of sample chunks.
+	 */
+	private long getSampleChunkCount(long fileLength)
+	{
+		return Math.max(1, (long) Math.ceil(fileLength * m_sampleRatio / SAMPLE_CHUNK_SIZE));
+	}
+
 	/**
 	 *
 	 */
@@ -159,247 +291,552 @@ public class HuffmanExecution implements Runnable
 		m_logger.info("Decompressing...");
 		File compressedFile = new File(m_inputPath);
 
-		String statPath = "";
-		int lastSepIndex = m_inputPath.lastIndexOf(File.separator);
-
-		if (lastSepIndex != -1)
-		{
-			statPath = m_inputPath.substring(0, lastSepIndex) + STATISTICS_APPEND + m_inputPath.substring(lastSepIndex, m_inputPath.length() - 1);
-		}
-		else
-		{
-			statPath = STATISTICS_APPEND + m_inputPath;
-		}
+		String statPath = getStatPath(compressedFile);
 
 		m_logger.debug("Statistics file path: " + statPath);
 
 		File statFile = new File(statPath);
 
-		byte[] fileContent = null;
+		HuffmanCodeTable table = readStatTable(statFile);
 
-		Map<String, Character> freqMap = readStatFrequency(statFile);
-		statFile.delete();
+		if (table == null)
+		{
+			m_logger.error("The statistics file at path " + statPath + " is missing or empty.");
+			return;
+		}
+
+		Path decompressedPath;
 
 		try
 		{
-			fileContent = Files.readAllBytes(compressedFile.toPath());
+			decompressedPath = createTempFile(compressedFile);
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			return;
 		}
 
-		try
+		// The compressed file is only replaced once it has been decoded completely
+		if (!decompressFile(table, compressedFile.toPath(), decompressedPath)
+			|| !replaceFile(decompressedPath, compressedFile))
 		{
-			decompressFile(freqMap, m_inputPath, fileContent);
-		}
-		catch (Exception e)
-		{
-			m_logger.error(e, e);
+			deleteQuietly(decompressedPath);
+			return;
 		}
 
+		statFile.delete();
+
 		m_logger.info("Done!");
 	}
 
 	/*
-	 * Description: Scans the compressed file for each binary code until the EOF. As each line is read,
-	 * the string is passed to parseFile along with the statistics file.
-	 * Input: File (statisics.txt), File (compressed.txt)
-	 * Output: Check parseFile function
-	 * Return: void (null)
-	 *
+	 * Description: Decodes the compressed file with a HuffmanDecoder over the code table until the end of file
+	 * marker is found. The compressed bytes are read and the decoded bytes are written through two reused direct
+	 * buffers, so memory use does not depend on the size of the file.
+	 * Input: HuffmanCodeTable (code table), Path (compressed file), Path (file to write)
+	 * Output: The decompressed file
+	 * Return: boolean (false if the compressed file could not be read or decoded)
 	 */
-	public void decompressFile(Map<String, Character> freqMap, String filePath, byte[] compressedContent)
+	public boolean decompressFile(HuffmanCodeTable table, Path compressedPath, Path decompressedPath)
 	{
-		try (PrintWriter decompressedFile = new PrintWriter(new FileWriter(filePath)))
+		HuffmanDecoder decoder = new HuffmanDecoder(table, END_OF_FILE);
+
+		try (FileChannel compressedFile = FileChannel.open(compressedPath, StandardOpenOption.READ);
+			FileChannel decompressedFile = FileChannel.open(decompressedPath, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
 		{
-			IterableBitArray itrArr = new IterableBitArray(compressedContent);
+			ByteBuffer input = ByteBuffer.allocateDirect(CHUNK_SIZE).flip();
+			ByteBuffer output = ByteBuffer.allocateDirect(CHUNK_SIZE);
 
-			String code = "";
-			for (boolean b : itrArr)
+			// The decoder stops early either when the output buffer is full or when the input is exhausted
+			while (!decoder.decode(input, output))
 			{
-				code += b ? "1" : "0";
-
-				if (freqMap.containsKey(code))
+				if (!output.hasRemaining())
 				{
-					char c = freqMap.get(code);
+					writeFully(decompressedFile, output);
+				}
+				else
+				{
+					input.clear();
 
-					if (c == (char) 0)
+					if (compressedFile.read(input) == -1)
 					{
-						return;
+						break;
 					}
-					decompressedFile.write(c);
-					decompressedFile.flush();
-
-					System.out.print(c);
 
-					code = "";
+					input.flip();
 				}
 			}
 
-			decompressedFile.flush();
+			writeFully(decompressedFile, output);
+
+			if (!decoder.isFinished())
+			{
+				m_logger.error("The compressed file at path " + compressedPath + " ended before the end of file marker.");
+				return false;
+			}
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			return false;
 		}
+
+		return true;
 	}
 
 	/**
+	 * Creates an empty temporary file in the directory of the provided file, with the same permissions where the file
+	 * system supports them, so it can later be moved over the provided file.
 	 *
-	 * @param statFile -
-	 * @return {@code Map<String, Character>}
+	 * @param file - The file the temporary file will replace.
+	 * @return Path - The path of the temporary file.
+	 * @throws IOException - If the temporary file cannot be created.
 	 */
-	private Map<String, Character> readStatFrequency(File statFile)
+	private static Path createTempFile(File file) throws IOException
 	{
-		Map<String, Character> freqMap = new HashMap<>();
+		Path target = file.getAbsoluteFile().toPath();
+		String prefix = STATISTICS_APPEND + file.getName() + STATISTICS_APPEND;
+		Path temp = Files.createTempFile(target.getParent(), prefix, TEMP_SUFFIX);
 
 		try
 		{
-			Scanner fin = new Scanner(statFile);
+			Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+		}
+		catch (UnsupportedOperationException e)
+		{
+			m_logger.trace("POSIX permissions are not supported, keeping default temporary file permissions.");
+		}
 
-			while (fin.hasNextLine())
+		return temp;
+	}
+
+	/**
+	 * Moves the temporary file over the provided file, atomically where the file system supports it.
+	 *
+	 * @param temp - The completely written temporary file.
+	 * @param file - The file to replace.
+	 * @return boolean - A flag representing if the file was replaced.
+	 */
+	private static boolean replaceFile(Path temp, File file)
+	{
+		try
+		{
+			try
 			{
-				String line = fin.nextLine();
-				String[] parts = line.split(SPACE_REGEX);
-				freqMap.put(parts[5], parts[1].charAt(0));
+				Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
-
-			fin.close();
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			return false;
 		}
 
-		return freqMap;
+		return true;
 	}
 
-	/*
-	 * Description: This function creates a BufferedReader that reads from the uncompressed file. The function
-	 * will read until EOF and read each character at a time passing each character to the Compress function.
-	 * Input: HNode (root of tree), File (uncompressed file), BufferedWriter (compressed file)
-	 * Output: Check Compress function
-	 * Return: void (null)
+	/**
+	 * Deletes the provided file if it exists, logging rather than throwing on failure.
+	 *
+	 * @param path - The file to delete.
 	 */
-	public void createCompressedFile(StringBuilder sb, BufferedOutputStream bos)
+	private static void deleteQuietly(Path path)
 	{
-		ByteBuffer b = ByteBuffer.allocate((sb.length() / 8) + 1);
-		b.clear();
+		try
+		{
+			Files.deleteIfExists(path);
+		}
+		catch (Exception e)
+		{
+			m_logger.error(e, e);
+		}
+	}
 
-		byte data = 0;
-		int bitIndex = 8;
+	/**
+	 * Writes the bytes written into the provided buffer to the channel and clears the buffer for reuse.
+	 *
+	 * @param channel - The channel to write to.
+	 * @param buffer - A buffer whose position marks the end of the bytes to write.
+	 * @throws IOException - If writing to the channel fails.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
 
-		for (char bit : sb.toString().toCharArray())
+		while (buffer.hasRemaining())
 		{
-			System.out.println("Char: " + bit);
+			channel.write(buffer);
+		}
 
-			if (bit == '1')
-			{
-				data |= (1 << (bitIndex - 1));
-			}
+		buffer.clear();
+	}
 
-			bitIndex--;
+	/**
+	 * Reads the (symbol, code) pairs of the statistics file and returns the code table they describe. Tables are cached
+	 * by code length alone, which determines the codes when they are canonical, so files whose frequencies differ but
+	 * give the same code lengths share a table. Statistics files with codes which are not canonical, written before the
+	 * codes were made canonical, are decoded with a table which is not cached.
+	 *
+	 * @param statFile - The statistics file of the compressed file.
+	 * @return HuffmanCodeTable - The code table, or null if the statistics file is missing, empty or invalid.
+	 */
+	private HuffmanCodeTable readStatTable(File statFile)
+	{
+		boolean empty = true;
+		String[] codes = new String[SYMBOL_COUNT];
 
-			if (bitIndex == 0)
+		try (Scanner fin = new Scanner(statFile))
+		{
+			while (fin.hasNextLine())
 			{
-				byte d = data;
-				bitIndex = 8;
-				b.put(d);
-				data = 0;
+				String[] parts = fin.nextLine().split(SPACE_REGEX);
+				codes[Integer.parseInt(parts[1])] = parts[5];
+				empty = false;
 			}
 		}
-
-		if (data != 0)
+		catch (Exception e)
 		{
-			b.put(data);
+			m_logger.error(e, e);
+			return null;
 		}
 
-		for (byte byteData : b.array())
+		if (empty)
 		{
-			String s1 = String.format("%8s", Integer.toBinaryString(byteData & 0xFF)).replace(' ', '0');
-			System.out.println(s1);
-//				System.out.println(Integer.toHexString(byteData));
+			return null;
 		}
 
-		System.out.println(sb);
+		int[] codeLengths = getCodeLengths(codes);
 
 		try
 		{
-			bos.write(b.array());
-			bos.flush();
+			if (!Arrays.equals(codes, getCanonicalCode(codeLengths)))
+			{
+				return new HuffmanCodeTable(codes);
+			}
+
+			HuffmanCodeTable table = m_tableCache.getDecodeTable(codeLengths);
+
+			if (table == null)
+			{
+				table = new HuffmanCodeTable(codes);
+				m_tableCache.putDecodeTable(codeLengths, table);
+			}
+			else
+			{
+				m_logger.debug("Reusing cached code table for identical code lengths.");
+			}
+
+			return table;
 		}
 		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			return null;
 		}
 	}
 
 	/*
-	 * Description: Recursive function that goes through every node, searching for any nodes in the tree
-	 * that have character values assigned to them (non-intermediate nodes). Once this node is found, the
-	 * BufferedWriter prints the HNode information into the Statistics file.
-	 * Input: HNode (every node in tree), BufferedWriter (Statistics file)
-	 * Output: Prints all character node information into file
+	 * Description: Reads the uncompressed input in bulk and packs the code of each byte, followed by the end of file
+	 * marker, into the output stream. The HuffmanEncoder reads the flat (code, length) arrays of the code table so
+	 * each byte costs one lookup and one accumulator update.
+	 * Input: HuffmanCodeTable (code table), InputStream (uncompressed file), OutputStream (compressed file)
+	 * Output: Packed bytes of the compressed file
 	 * Return: void (null)
 	 */
-	private void createStatFile(HuffmanNode temp, BufferedWriter bw)
+	public void createCompressedFile(HuffmanCodeTable table, InputStream inputStream, OutputStream outputStream)
+		throws IOException
 	{
-		if (temp == null)
+		createCompressedFile(table, null, inputStream, outputStream);
+	}
+
+	/*
+	 * Description: Encodes the uncompressed file into the compressed file as below, truncating the compressed file
+	 * first so that an encoding which stopped early can be restarted into the same file.
+	 * Input: HuffmanCodeTable (code table), double[] (max bits per byte of each sampled region), File (uncompressed file), Path (compressed file)
+	 * Output: Packed bytes of the compressed file
+	 * Return: boolean (false if encoding stopped because the code cost drifted past the limit)
+	 */
+	private boolean createCompressedFile(HuffmanCodeTable table, double[] maxBitsPerByte, File inputFile,
+		Path compressedPath) throws IOException
+	{
+		try (InputStream inputStream = new FileInputStream(inputFile);
+			OutputStream outputStream = Files.newOutputStream(compressedPath))
 		{
-			return;
+			return createCompressedFile(table, maxBitsPerByte, inputStream, outputStream);
 		}
+	}
 
-		createStatFile(temp.getLeft(), bw);
+	/*
+	 * Description: Encodes the uncompressed input chunk by chunk as above. When the codes were built from a sampled
+	 * histogram, encoding stops early once the bits written for the file up to the end of a sampled region exceed the
+	 * limit for that region. The limit is derived from the samples taken within the same part of the file, so a file
+	 * whose content changes along its length is compared with what its samples predicted for each part rather than
+	 * with the average of the whole file.
+	 * Input: HuffmanCodeTable (code table), double[] (max bits per byte of each sampled region, null to never stop), InputStream (uncompressed file), OutputStream (compressed file)
+	 * Output: Packed bytes of the compressed file
+	 * Return: boolean (false if encoding stopped because the code cost drifted past the limit)
+	 */
+	private boolean createCompressedFile(HuffmanCodeTable table, double[] maxBitsPerByte, InputStream inputStream,
+		OutputStream outputStream) throws IOException
+	{
+		int read;
+		long bytes = 0;
+		int region = 0;
+		byte[] chunk = new byte[CHUNK_SIZE];
+		HuffmanEncoder encoder = new HuffmanEncoder(table, outputStream);
 
-		if (temp.getCharacter() != (char) -1)
+		while ((read = inputStream.read(chunk)) != -1)
 		{
-			try
+			encoder.encode(chunk, 0, read);
+			bytes += read;
+
+			while (maxBitsPerByte != null && region < maxBitsPerByte.length && bytes >= m_sampleEnds[region])
 			{
-				bw.write("Node: " + temp.getCharacter() + " Freq: " + temp.getFrequency() + " Code: " + temp.getCode());
-				bw.newLine();
+				if (encoder.getEncodedBits() > maxBitsPerByte[region] * bytes)
+				{
+					m_logger.debug("Code cost of " + (double) encoder.getEncodedBits() / bytes + " bits per byte over the first "
+						+ bytes + " bytes exceeds the limit of " + maxBitsPerByte[region] + ".");
+					return false;
+				}
+
+				region++;
 			}
-			catch (Exception e)
+		}
+
+		encoder.encodeSymbol(END_OF_FILE);
+		encoder.finish();
+
+		return true;
+	}
+
+	/*
+	 * Description: Computes the most bits per byte the encoding of each sampled region may cost before the sample is
+	 * considered unrepresentative, which is the cost predicted by the samples up to the end of that region plus the
+	 * drift threshold.
+	 * Input: HuffmanCodeTable (code table)
+	 * Output: Max bits per uncompressed byte of each sampled region
+	 * Return: double[]
+	 */
+	private double[] getDriftLimits(HuffmanCodeTable table)
+	{
+		double[] maxBitsPerByte = new double[m_sampleCounts.length];
+
+		for (int i = 0; i < maxBitsPerByte.length; i++)
+		{
+			maxBitsPerByte[i] = getExpectedBitsPerByte(m_sampleCounts[i], table) * (1 + DRIFT_THRESHOLD);
+		}
+
+		return maxBitsPerByte;
+	}
+
+	/*
+	 * Description: Computes the average code length per byte that the provided code table would achieve on bytes
+	 * with the provided counts.
+	 * Input: long[] (count array), HuffmanCodeTable (code table)
+	 * Output: Expected bits per uncompressed byte
+	 * Return: double
+	 */
+	private double getExpectedBitsPerByte(long[] charCounts, HuffmanCodeTable table)
+	{
+		long bits = 0;
+		long total = 0;
+
+		for (int i = 0; i < charCounts.length; i++)
+		{
+			if (charCounts[i] > 0 && table.getLength(i) > 0)
 			{
-				m_logger.error(e, e);
+				bits += charCounts[i] * table.getLength(i);
+				total += charCounts[i];
 			}
 		}
 
-		createStatFile(temp.getRight(), bw);
+		return total == 0 ? 0 : (double) bits / total;
+	}
+
+	/*
+	 * Description: Writes a line of node information into the Statistics file for every symbol which has a code
+	 * in the code table, in symbol order. The end of file marker is always given a frequency of 1.
+	 * Input: int[] (count array), HuffmanCodeTable (code table), BufferedWriter (Statistics file)
+	 * Output: Prints all character node information into file
+	 * Return: void (null)
+	 */
+	private void createStatFile(int[] charFrequencies, HuffmanCodeTable table, BufferedWriter bw) throws IOException
+	{
+		for (int i = 0; i < table.getSymbolCount(); i++)
+		{
+			if (table.getCode(i) != null)
+			{
+				int frequency = (i < charFrequencies.length) ? charFrequencies[i] : 1;
+				bw.write("Node: " + i + " Freq: " + frequency + " Code: " + table.getCode(i));
+				bw.newLine();
+			}
+		}
 	}
 
 	/*
-	 * Description: This function reads from the uncompressed file until EOF. For each line retrieved from
-	 * file, the function reads each character of the line and increments an array for the integer representation
-	 * of the character EX: aaa -> counts[97] = 3;
+	 * Description: This function reads from the uncompressed file until EOF in chunks of bytes, including line
+	 * terminators, and increments an array for the integer representation of each byte EX: aaa -> counts[97] = 3;
 	 * Input: File (uncompressed file)
 	 * Output: array of counts for each character in file
 	 * Return: int[]
 	 */
 	public int[] getCharFrequencies(File uncompressedPath)
 	{
-		int[] charCounts = new int[256];
+		long[] charCounts = new long[256];
 
-		try (BufferedReader inputStream = new BufferedReader(new FileReader(uncompressedPath)))
+		try (FileInputStream inputStream = new FileInputStream(uncompressedPath))
 		{
-			String uncompressedLine;
+			int read;
+			byte[] chunk = new byte[CHUNK_SIZE];
 
-			while ((uncompressedLine = inputStream.readLine()) != null)
+			while ((read = inputStream.read(chunk)) != -1)
 			{
-				for (int i = 0; i < uncompressedLine.length(); i++)
+				accumulateFrequencies(chunk, read, charCounts);
+			}
+		}
+		catch (Exception e)
+		{
+			m_logger.error(e, e);
+		}
+
+		return scaleFrequencies(charCounts);
+	}
+
+	/*
+	 * Description: Estimates the character frequencies of a large file by reading evenly strided chunks which cover
+	 * roughly the sample ratio of the file. Every byte value is given a count of at least one so that bytes missed by
+	 * the sample can still be encoded. The file is also split into up to SAMPLE_REGIONS regions, and the counts of the
+	 * samples up to the end of each region are kept so the encoding can check the sample against each part of the file.
+	 * Input: File (uncompressed file)
+	 * Output: array of estimated counts for each character in file
+	 * Return: int[]
+	 */
+	public int[] estimateCharFrequencies(File uncompressedPath)
+	{
+		long[] charCounts = new long[256];
+		long fileLength = uncompressedPath.length();
+		long chunkCount = getSampleChunkCount(fileLength);
+		long stride = fileLength / chunkCount;
+		long chunksPerRegion = (chunkCount + SAMPLE_REGIONS - 1) / SAMPLE_REGIONS;
+		int regionCount = (int) ((chunkCount + chunksPerRegion - 1) / chunksPerRegion);
+
+		m_sampleEnds = new long[regionCount];
+		m_sampleCounts = new long[regionCount][];
+
+		m_logger.debug("Sampling " + chunkCount + " chunks of " + SAMPLE_CHUNK_SIZE + " bytes with a stride of " + stride + ".");
+
+		try (FileChannel channel = FileChannel.open(uncompressedPath.toPath(), StandardOpenOption.READ))
+		{
+			byte[] chunk = new byte[SAMPLE_CHUNK_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(chunk);
+
+			for (long i = 0; i < chunkCount; i++)
+			{
+				buffer.clear();
+				long position = i * stride;
+
+				while (buffer.hasRemaining())
+				{
+					if (channel.read(buffer, position + buffer.position()) == -1)
+					{
+						break;
+					}
+				}
+
+				accumulateFrequencies(chunk, buffer.position(), charCounts);
+
+				// Each sample stands for the stride of the file which starts with it
+				if ((i + 1) % chunksPerRegion == 0 || i == chunkCount - 1)
 				{
-					char uncompressedChar = uncompressedLine.charAt(i);
-					charCounts[uncompressedChar]++;
-					m_logger.trace("Character '" + uncompressedChar + "' now has count: "
-						+ charCounts[uncompressedChar]);
+					int region = (int) (i / chunksPerRegion);
+					m_sampleEnds[region] = (i == chunkCount - 1) ? fileLength : (i + 1) * stride;
+					m_sampleCounts[region] = charCounts.clone();
 				}
 			}
-		} catch (Exception e)
+		}
+		catch (Exception e)
 		{
 			m_logger.error(e, e);
+			m_sampleEnds = new long[0];
+			m_sampleCounts = new long[0][];
+		}
+
+		for (int i = 0; i < charCounts.length; i++)
+		{
+			charCounts[i] = Math.max(charCounts[i], 1);
+		}
+
+		return scaleFrequencies(charCounts);
+	}
+
+	/*
+	 * Description: Narrows byte counts to the frequencies the tree is built from. The frequency of every node of the
+	 * tree, including the root which is the sum of all of them, must fit in an int. When the total would not fit,
+	 * which happens for files over 2 GB, every count is divided by the same factor and counts which round down to
+	 * zero are kept at one so that their bytes still get a code.
+	 * Input: long[] (count array)
+	 * Output: array of frequencies for each character in file
+	 * Return: int[]
+	 */
+	static int[] scaleFrequencies(long[] charCounts)
+	{
+		long total = 1;
+		int[] frequencies = new int[charCounts.length];
+
+		for (long count : charCounts)
+		{
+			total += count;
 		}
 
-		return charCounts;
+		// Leaves room for the end of file marker and for every count kept at one
+		long divisor = total / (Integer.MAX_VALUE - SYMBOL_COUNT - 1) + 1;
+
+		for (int i = 0; i < charCounts.length; i++)
+		{
+			frequencies[i] = (charCounts[i] == 0) ? 0 : (int) Math.max(1, charCounts[i] / divisor);
+		}
+
+		return frequencies;
+	}
+
+	/*
+	 * Description: Adds the byte counts of a chunk to the provided counts array. Four partial histograms are used so
+	 * that runs of the same byte do not serialize on a single counter, then they are merged into the counts array.
+	 * Input: byte[] (chunk of uncompressed file), int (number of valid bytes), long[] (counts array)
+	 * Output: The counts array is incremented for every byte of the chunk
+	 * Return: void (null)
+	 */
+	private static void accumulateFrequencies(byte[] chunk, int length, long[] charCounts)
+	{
+		int[] c0 = new int[256];
+		int[] c1 = new int[256];
+		int[] c2 = new int[256];
+		int[] c3 = new int[256];
+
+		int i = 0;
+		for (; i + 3 < length; i += 4)
+		{
+			c0[chunk[i] & 0xFF]++;
+			c1[chunk[i + 1] & 0xFF]++;
+			c2[chunk[i + 2] & 0xFF]++;
+			c3[chunk[i + 3] & 0xFF]++;
+		}
+
+		for (; i < length; i++)
+		{
+			c0[chunk[i] & 0xFF]++;
+		}
+
+		for (int j = 0; j < 256; j++)
+		{
+			charCounts[j] += c0[j] + c1[j] + c2[j] + c3[j];
+		}
 	}
 
 	/*
@@ -426,8 +863,8 @@ public class HuffmanExecution implements Runnable
 			}
 		}
 
-		// Add a NUL character into list to send to represent end of compressed file
-		q.add(new HuffmanNode(1, (char) 0));
+		// Add a symbol outside of the byte range into list to send to represent end of compressed file
+		q.add(new HuffmanNode(1, (char) END_OF_FILE));
 
 		while (q.size() > 1)
 		{
@@ -455,12 +892,79 @@ public class HuffmanExecution implements Runnable
 			return null;
 		}
 
-		String[] c = new String[256];
+		String[] c = new String[SYMBOL_COUNT];
+
+		// A tree of a single leaf (an empty input file) still needs a one bit code for that leaf
+		if (r.getLeft() == null && r.getRight() == null)
+		{
+			r.setCode("0");
+		}
+
 		setCode(r, c);
 
 		return c;
 	}
 
+	/*
+	 * Description: This function returns the length of every code, 0 for any symbols without a code.
+	 * Input: String[] (codes array)
+	 * Output: Array of code lengths
+	 * Return: int[]
+	 */
+	public int[] getCodeLengths(String[] codes)
+	{
+		int[] codeLengths = new int[codes.length];
+
+		for (int i = 0; i < codes.length; i++)
+		{
+			codeLengths[i] = (codes[i] == null) ? 0 : codes[i].length();
+		}
+
+		return codeLengths;
+	}
+
+	/*
+	 * Description: This function returns the canonical Huffman codes for the provided code lengths. Symbols are
+	 * ordered by code length and then by symbol, and each is given the next code of its length, so the codes only
+	 * depend on the code lengths. They are exactly as long as the codes read from the tree and just as compact.
+	 * Lengths beyond the longest code the code table supports are rejected with an IllegalArgumentException.
+	 * Input: int[] (code lengths array)
+	 * Output: Array of binary codes
+	 * Return: String[]
+	 */
+	public String[] getCanonicalCode(int[] codeLengths)
+	{
+		long code = 0;
+		int codeLength = 0;
+		String[] c = new String[codeLengths.length];
+
+		for (int i = 0; i < codeLengths.length; i++)
+		{
+			if (codeLengths[i] > HuffmanCodeTable.MAX_CODE_LENGTH)
+			{
+				throw new IllegalArgumentException("Code for symbol " + i + " must be at most "
+					+ HuffmanCodeTable.MAX_CODE_LENGTH + " bits: " + codeLengths[i]);
+			}
+		}
+
+		for (int length = 1; length <= HuffmanCodeTable.MAX_CODE_LENGTH; length++)
+		{
+			for (int i = 0; i < codeLengths.length; i++)
+			{
+				if (codeLengths[i] == length)
+				{
+					code <<= length - codeLength;
+					codeLength = length;
+
+					String bits = Long.toBinaryString(code++);
+					c[i] = "0".repeat(length - bits.length()) + bits;
+				}
+			}
+		}
+
+		return c;
+	}
+
 	/*
 	 * Description: Recursive function that checks every node in tree and sets codes for each nodes based
 	 * on its frequency (Check Huffman Tree properties)
@@ -488,32 +992,4 @@ public class HuffmanExecution implements Runnable
 			c[r.getCharacter()] = r.getCode();
 		}
 	}
-
-	/**
-	 *
-	 * @param n
-	 * @param c
-	 * @return
-	 */
-	private HuffmanNode inOrderSearch(HuffmanNode node, char character)
-	{
-		if (node == null)
-		{
-			return null;
-		}
-
-		if (node.getCharacter() == character)
-		{
-			return node;
-		}
-
-		HuffmanNode tmp = inOrderSearch(node.getLeft(), character);
-
-		if (tmp == null)
-		{
-			tmp = inOrderSearch(node.getRight(), character);
-		}
-
-		return tmp;
-	}
 }
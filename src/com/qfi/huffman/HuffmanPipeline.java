@@ -0,0 +1,332 @@
+package com.qfi.huffman;
+
+import java.util.Set;
+import java.util.List;
+import java.util.Queue;
+import java.util.HashSet;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import org.apache.logging.log4j.Logger;
+import java.util.concurrent.BlockingQueue;
+import org.apache.logging.log4j.LogManager;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The HuffmanPipeline object processes many files by overlapping the stages of compression across files. Each file is
+ * handled by its own HuffmanExecution which is passed through three stages, each with its own threads:
+ *
+ * HISTOGRAM: Counts the character frequencies of the input file.
+ * TREE: Builds the Huffman tree and code table from the frequencies.
+ * ENCODE: Encodes the input file and writes the compressed and statistics files.
+ *
+ * The stages are connected by bounded queues, so a fast stage blocks once it is far enough ahead of the next one. This
+ * keeps the disk busy counting file N+1 while file N is being encoded, without reading ahead without limit. When
+ * decompressing, the histogram and tree stages pass each execution through and the encode stage decompresses it.
+ *
+ * The queue capacity, the number of threads of each stage and the interval at which queue depths are logged can be
+ * configured with the "huffman.pipeline.*" system properties. Encoding streams each file through fixed size buffers, so
+ * an encode thread holds a few buffers rather than a whole file, but every encode thread reads and writes a file at
+ * once. The encode stage therefore defaults to a small fixed budget of 2 threads rather than one per processor, which
+ * would mostly add disk contention.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanPipeline implements Runnable
+{
+	private static final String COMPRESS = "COMPRESS";
+	private static final String DECOMPRESS = "DECOMPRESS";
+	private static final int QUEUE_CAPACITY = Integer.getInteger("huffman.pipeline.queue", 4);
+	private static final int TREE_THREADS = Integer.getInteger("huffman.pipeline.tree.threads", 1);
+	private static final int HISTOGRAM_THREADS = Integer.getInteger("huffman.pipeline.histogram.threads", 1);
+	private static final int ENCODE_THREADS = Integer.getInteger("huffman.pipeline.encode.threads", 2);
+	private static final long REPORT_INTERVAL_MS = Long.getLong("huffman.pipeline.report.ms", 1000);
+	private static final Logger m_logger = LogManager.getLogger(HuffmanPipeline.class);
+
+	// Placed on a queue once per consuming thread after the producing stage has finished
+	private static final HuffmanExecution END_OF_STAGE = new HuffmanExecution("", "");
+
+	private final boolean m_compress;
+	private final Queue<String> m_paths;
+	private final BlockingQueue<HuffmanExecution> m_treeQueue;
+	private final BlockingQueue<HuffmanExecution> m_encodeQueue;
+
+	/**
+	 * HuffmanPipeline constructor.
+	 *
+	 * @param mode - Either "COMPRESS" or "DECOMPRESS".
+	 * @param paths - The paths of the files to compress or decompress, duplicates are processed once.
+	 */
+	public HuffmanPipeline(String mode, List<String> paths)
+	{
+		m_compress = mode.equalsIgnoreCase(COMPRESS);
+		m_paths = new ConcurrentLinkedQueue<>(getDistinctPaths(paths));
+		m_treeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		m_encodeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Starts the threads of every stage and waits for all of the files to be processed.
+	 */
+	@Override
+	public void run()
+	{
+		m_logger.info("Starting pipeline of " + m_paths.size() + " files with " + HISTOGRAM_THREADS + " histogram, "
+			+ TREE_THREADS + " tree and " + ENCODE_THREADS + " encode threads.");
+
+		List<Thread> histogramThreads = startStage("histogram", HISTOGRAM_THREADS, this::runHistogramStage);
+		List<Thread> treeThreads = startStage("tree", TREE_THREADS, this::runTreeStage);
+		List<Thread> encodeThreads = startStage("encode", ENCODE_THREADS, this::runEncodeStage);
+
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		reporter.scheduleAtFixedRate(this::reportQueueDepth, REPORT_INTERVAL_MS, REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+		try
+		{
+			finishStage(histogramThreads, m_treeQueue, TREE_THREADS);
+			finishStage(treeThreads, m_encodeQueue, ENCODE_THREADS);
+			finishStage(encodeThreads, null, 0);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			m_logger.error(e, e);
+		}
+		finally
+		{
+			reporter.shutdownNow();
+		}
+
+		m_logger.info("Pipeline finished.");
+	}
+
+	/**
+	 * Accessor for the number of executions waiting for the tree stage.
+	 *
+	 * @return int
+	 */
+	public int getTreeQueueDepth()
+	{
+		return m_treeQueue.size();
+	}
+
+	/**
+	 * Accessor for the number of executions waiting for the encode stage.
+	 *
+	 * @return int
+	 */
+	public int getEncodeQueueDepth()
+	{
+		return m_encodeQueue.size();
+	}
+
+	/**
+	 * Counts the character frequencies of each remaining file and hands its execution to the tree stage.
+	 *
+	 * @throws InterruptedException - If interrupted while waiting for room in the tree queue.
+	 */
+	private void runHistogramStage() throws InterruptedException
+	{
+		String path;
+
+		while ((path = m_paths.poll()) != null)
+		{
+			HuffmanExecution execution = new HuffmanExecution(m_compress ? COMPRESS : DECOMPRESS, path);
+
+			try
+			{
+				if (m_compress)
+				{
+					execution.countFrequencies();
+				}
+			}
+			catch (RuntimeException e)
+			{
+				m_logger.error(e, e);
+				continue;
+			}
+
+			m_treeQueue.put(execution);
+		}
+	}
+
+	/**
+	 * Builds the code table of each execution and hands it to the encode stage.
+	 *
+	 * @throws InterruptedException - If interrupted while waiting on either queue.
+	 */
+	private void runTreeStage() throws InterruptedException
+	{
+		HuffmanExecution execution;
+
+		while ((execution = m_treeQueue.take()) != END_OF_STAGE)
+		{
+			try
+			{
+				if (m_compress)
+				{
+					execution.buildCodes();
+				}
+			}
+			catch (RuntimeException e)
+			{
+				m_logger.error(e, e);
+				continue;
+			}
+
+			m_encodeQueue.put(execution);
+		}
+	}
+
+	/**
+	 * Encodes and writes each execution, or decompresses it when the pipeline is decompressing.
+	 *
+	 * @throws InterruptedException - If interrupted while waiting for the encode queue.
+	 */
+	private void runEncodeStage() throws InterruptedException
+	{
+		HuffmanExecution execution;
+
+		while ((execution = m_encodeQueue.take()) != END_OF_STAGE)
+		{
+			try
+			{
+				if (m_compress)
+				{
+					execution.writeCompressedFile();
+				}
+				else
+				{
+					execution.run();
+				}
+			}
+			catch (RuntimeException e)
+			{
+				m_logger.error(e, e);
+			}
+		}
+	}
+
+	/**
+	 * Removes every path which refers to the same file as an earlier path, comparing the real paths so that relative
+	 * paths, redundant elements and symbolic links are resolved. Two executions of the same file would encode it twice
+	 * and overwrite each other's statistics file, leaving a file which cannot be decompressed.
+	 *
+	 * @param paths - The paths of the files to process.
+	 * @return {@code List<String>} - The paths in their original order with duplicates removed.
+	 */
+	static List<String> getDistinctPaths(List<String> paths)
+	{
+		Set<Path> files = new HashSet<>();
+		List<String> distinct = new ArrayList<>();
+
+		for (String path : paths)
+		{
+			Path file;
+
+			try
+			{
+				file = Paths.get(path).toRealPath();
+			}
+			catch (Exception e)
+			{
+				// A missing file is kept so its execution reports the error
+				file = Paths.get(path).toAbsolutePath().normalize();
+			}
+
+			if (files.add(file))
+			{
+				distinct.add(path);
+			}
+			else
+			{
+				m_logger.warn("Skipping " + path + " which refers to the same file as an earlier path.");
+			}
+		}
+
+		return distinct;
+	}
+
+	/**
+	 * Logs the current depth of each queue.
+	 */
+	private void reportQueueDepth()
+	{
+		m_logger.info("Queue depth - tree: " + getTreeQueueDepth() + "/" + QUEUE_CAPACITY + ", encode: "
+			+ getEncodeQueueDepth() + "/" + QUEUE_CAPACITY + ".");
+	}
+
+	/**
+	 * Starts the threads of a stage.
+	 *
+	 * @param name - The name of the stage, used for the thread names.
+	 * @param threadCount - The number of threads to start.
+	 * @param stage - The body run by each thread.
+	 * @return {@code List<Thread>} - The started threads.
+	 */
+	private List<Thread> startStage(String name, int threadCount, Stage stage)
+	{
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < Math.max(1, threadCount); i++)
+		{
+			Thread thread = new Thread(() ->
+			{
+				try
+				{
+					stage.run();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				catch (Exception e)
+				{
+					m_logger.error(e, e);
+				}
+			}, "huffman-" + name + "-" + i);
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		return threads;
+	}
+
+	/**
+	 * Waits for the threads of a stage to finish and then signals every thread of the next stage to stop once it has
+	 * drained the queue between them.
+	 *
+	 * @param threads - The threads of the finishing stage.
+	 * @param next - The queue read by the next stage, or null if this is the last stage.
+	 * @param nextThreadCount - The number of threads reading from the next queue.
+	 * @throws InterruptedException - If interrupted while waiting.
+	 */
+	private void finishStage(List<Thread> threads, BlockingQueue<HuffmanExecution> next, int nextThreadCount)
+		throws InterruptedException
+	{
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		for (int i = 0; next != null && i < Math.max(1, nextThreadCount); i++)
+		{
+			next.put(END_OF_STAGE);
+		}
+	}
+
+	/**
+	 * The body of a stage thread.
+	 */
+	@FunctionalInterface
+	private interface Stage
+	{
+		void run() throws InterruptedException;
+	}
+}
@@ -0,0 +1,209 @@
+package com.qfi.huffman;
+
+import java.util.Map;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HuffmanTableCache object is a bounded, thread safe, least recently used cache of previously built Huffman tables.
+ * Files which share the same symbol distribution (rotated logs from the same service for example) produce trees with
+ * the same code lengths even when their byte counts differ slightly. Codes are canonical, so the code lengths determine
+ * the codes, and tables are keyed by them: compression and decompression reuse the code table built for the same code
+ * lengths instead of rebuilding the encoder arrays, the pair tables and the decoding trie from scratch. Building the
+ * tree which gives the code lengths is cheap in comparison. Code tables are immutable, so a cached table is shared
+ * without locking.
+ *
+ * The number of tables retained per direction can be configured with the "huffman.cache.size" system property.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public final class HuffmanTableCache
+{
+	private static final int DEFAULT_CAPACITY = 64;
+	private static final String CAPACITY_PROPERTY = "huffman.cache.size";
+	private static final HuffmanTableCache m_instance =
+		new HuffmanTableCache(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+	private final AtomicLong m_hits = new AtomicLong();
+	private final AtomicLong m_misses = new AtomicLong();
+	private final Map<LengthKey, HuffmanCodeTable> m_encodeTables;
+	private final Map<LengthKey, HuffmanCodeTable> m_decodeTables;
+
+	/**
+	 * HuffmanTableCache constructor.
+	 *
+	 * @param capacity - The maximum number of encode tables and decode tables retained before eviction.
+	 */
+	public HuffmanTableCache(int capacity)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("Cache capacity must not be negative: " + capacity);
+		}
+
+		m_encodeTables = new LruMap<>(capacity);
+		m_decodeTables = new LruMap<>(capacity);
+	}
+
+	/**
+	 * Accessor for the process wide cache instance.
+	 *
+	 * @return HuffmanTableCache
+	 */
+	public static HuffmanTableCache getInstance()
+	{
+		return m_instance;
+	}
+
+	/**
+	 * Returns the cached encode table for the provided code lengths, or null if no table has been built for them.
+	 *
+	 * @param codeLengths - The length of the code of every symbol, 0 for symbols without a code.
+	 * @return HuffmanCodeTable - The cached code table or null.
+	 */
+	public synchronized HuffmanCodeTable getEncodeTable(int[] codeLengths)
+	{
+		return record(m_encodeTables.get(new LengthKey(codeLengths)));
+	}
+
+	/**
+	 * Stores the encode table built for the provided code lengths.
+	 *
+	 * @param codeLengths - The length of the code of every symbol, 0 for symbols without a code.
+	 * @param table - The code table built from the canonical codes of those lengths.
+	 */
+	public synchronized void putEncodeTable(int[] codeLengths, HuffmanCodeTable table)
+	{
+		m_encodeTables.put(new LengthKey(codeLengths.clone()), table);
+	}
+
+	/**
+	 * Returns the cached decode table for the provided code lengths, or null if no table has been built for them.
+	 *
+	 * @param codeLengths - The length of the code of every symbol, 0 for symbols without a code.
+	 * @return HuffmanCodeTable - The cached code table or null.
+	 */
+	public synchronized HuffmanCodeTable getDecodeTable(int[] codeLengths)
+	{
+		return record(m_decodeTables.get(new LengthKey(codeLengths)));
+	}
+
+	/**
+	 * Stores the decode table built for the provided code lengths.
+	 *
+	 * @param codeLengths - The length of the code of every symbol, 0 for symbols without a code.
+	 * @param table - The code table built from the canonical codes of those lengths.
+	 */
+	public synchronized void putDecodeTable(int[] codeLengths, HuffmanCodeTable table)
+	{
+		m_decodeTables.put(new LengthKey(codeLengths.clone()), table);
+	}
+
+	/**
+	 * Accessor for the number of lookups which found a cached table.
+	 *
+	 * @return long
+	 */
+	public long getHits()
+	{
+		return m_hits.get();
+	}
+
+	/**
+	 * Accessor for the number of lookups which did not find a cached table.
+	 *
+	 * @return long
+	 */
+	public long getMisses()
+	{
+		return m_misses.get();
+	}
+
+	/**
+	 * Removes every cached table and resets the hit and miss counters.
+	 */
+	public synchronized void clear()
+	{
+		m_encodeTables.clear();
+		m_decodeTables.clear();
+		m_hits.set(0);
+		m_misses.set(0);
+	}
+
+	/**
+	 * Updates the hit or miss counter based on the result of a lookup.
+	 *
+	 * @param table - The result of a cache lookup.
+	 * @return T - The provided lookup result.
+	 */
+	private <T> T record(T table)
+	{
+		if (table != null)
+		{
+			m_hits.incrementAndGet();
+		}
+		else
+		{
+			m_misses.incrementAndGet();
+		}
+
+		return table;
+	}
+
+	/**
+	 * An access ordered LinkedHashMap which evicts its least recently used entry once the capacity is exceeded.
+	 */
+	private static final class LruMap<K, V> extends LinkedHashMap<K, V>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int m_capacity;
+
+		LruMap(int capacity)
+		{
+			super(16, 0.75f, true);
+			m_capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+		{
+			return size() > m_capacity;
+		}
+	}
+
+	/**
+	 * Wraps the code lengths of a table so they can be used as a hash key by value rather than by reference.
+	 */
+	private static final class LengthKey
+	{
+		private final int m_hash;
+		private final int[] m_codeLengths;
+
+		LengthKey(int[] codeLengths)
+		{
+			m_codeLengths = codeLengths;
+			m_hash = Arrays.hashCode(codeLengths);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj instanceof LengthKey)
+			{
+				LengthKey other = (LengthKey) obj;
+				return m_hash == other.m_hash && Arrays.equals(m_codeLengths, other.m_codeLengths);
+			}
+
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return m_hash;
+		}
+	}
+}
@@ -0,0 +1,391 @@
+package com.qfi.huffman;
+
+import org.junit.Test;
+import java.util.Random;
+import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Round trips HuffmanEncoder and HuffmanDecoder over code tables built from random and adversarial inputs, with and
+ * without pair tables, through both the stream and the ByteBuffer entry points.
+ *
+ * The number of generated inputs can be configured with the "huffman.test.seeds" system property, for example
+ * -Dhuffman.test.seeds=100000 for a longer search. A failure names the seed which reproduces its input.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanCodeTableTest
+{
+	private static final int END_OF_FILE = 256;
+	private static final int[] PAIR_LENGTHS = {0, 12, 24, 31};
+	private static final int SEEDS = Integer.getInteger("huffman.test.seeds", 200);
+
+	@Test
+	public void testEmptyInput() throws IOException
+	{
+		assertRoundTrip(new byte[0]);
+	}
+
+	@Test
+	public void testSingleByte() throws IOException
+	{
+		assertRoundTrip(new byte[] {'a'});
+	}
+
+	@Test
+	public void testSingleSymbol() throws IOException
+	{
+		byte[] input = new byte[100000];
+		Arrays.fill(input, (byte) 0);
+		assertRoundTrip(input);
+	}
+
+	@Test
+	public void testAllByteValues() throws IOException
+	{
+		byte[] input = new byte[256 * 64];
+
+		for (int i = 0; i < input.length; i++)
+		{
+			input[i] = (byte) i;
+		}
+
+		assertRoundTrip(input);
+	}
+
+	@Test
+	public void testSkewedInput() throws IOException
+	{
+		assertRoundTrip(HuffmanTestData.skewed(new Random(1), 500000));
+	}
+
+	@Test
+	public void testRandomInput() throws IOException
+	{
+		Random random = new Random(2);
+
+		for (int length : new int[] {1, 2, 7, 8, 9, 4095, 65536, 65537, 300000})
+		{
+			byte[] input = new byte[length];
+			random.nextBytes(input);
+			assertRoundTrip(input);
+		}
+	}
+
+	@Test
+	public void testGeneratedInputs() throws IOException
+	{
+		for (int seed = 0; seed < SEEDS; seed++)
+		{
+			byte[] input = HuffmanTestData.generate(new Random(seed));
+
+			try
+			{
+				assertRoundTrip(input);
+			}
+			catch (AssertionError | RuntimeException e)
+			{
+				throw new AssertionError("Round trip failed for the input generated from seed " + seed, e);
+			}
+		}
+	}
+
+	@Test
+	public void testDeepTree() throws IOException
+	{
+		// Frequencies just above Fibonacci numbers produce a tree without ties whose depth grows with every symbol, the
+		// deepest tree whose total frequency still fits in an int
+		int[] counts = new int[256];
+		counts[0] = 2;
+		counts[1] = 3;
+
+		for (int i = 2; i < 41; i++)
+		{
+			counts[i] = counts[i - 1] + counts[i - 2] + 1;
+		}
+
+		String[] codes = HuffmanTestData.codes(counts);
+		int longest = 0;
+
+		for (String code : codes)
+		{
+			longest = Math.max(longest, code == null ? 0 : code.length());
+		}
+
+		assertTrue("Expected codes longer than 40 bits but the longest was " + longest, longest > 40);
+
+		byte[] input = new byte[41 * 1000];
+
+		for (int i = 0; i < input.length; i++)
+		{
+			input[i] = (byte) (i % 41);
+		}
+
+		for (int pairLength : PAIR_LENGTHS)
+		{
+			assertRoundTrip(input, new HuffmanCodeTable(codes, pairLength));
+		}
+	}
+
+	@Test
+	public void testPairTablesProduceIdenticalOutput() throws IOException
+	{
+		byte[] input = HuffmanTestData.skewed(new Random(3), 200000);
+		String[] codes = HuffmanTestData.codes(HuffmanTestData.histogram(input));
+		byte[] expected = encode(input, new HuffmanCodeTable(codes));
+
+		for (int pairLength : PAIR_LENGTHS)
+		{
+			HuffmanCodeTable table = new HuffmanCodeTable(codes, pairLength);
+			assertEquals(pairLength > 0, table.hasPairs());
+			assertArrayEquals("Pair length " + pairLength, expected, encode(input, table));
+		}
+	}
+
+	@Test
+	public void testByteBufferEncodingMatchesStream() throws IOException
+	{
+		byte[] input = HuffmanTestData.skewed(new Random(4), 100000);
+		String[] codes = HuffmanTestData.codes(HuffmanTestData.histogram(input));
+
+		for (int pairLength : PAIR_LENGTHS)
+		{
+			HuffmanCodeTable table = new HuffmanCodeTable(codes, pairLength);
+			HuffmanEncoder encoder = new HuffmanEncoder(table);
+			ByteBuffer src = ByteBuffer.wrap(input);
+			ByteBuffer dst = ByteBuffer.allocateDirect(HuffmanEncoder.MAX_SYMBOL_BYTES + 3);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			// A destination barely larger than a symbol forces state to carry over between almost every call
+			while (src.hasRemaining())
+			{
+				encoder.encode(src, dst);
+				drain(dst, out);
+			}
+
+			encoder.encodeSymbol(END_OF_FILE, dst);
+			encoder.finish(dst);
+			drain(dst, out);
+
+			assertArrayEquals("Pair length " + pairLength, encode(input, table), out.toByteArray());
+		}
+	}
+
+	@Test
+	public void testEncodedBitsMatchCodeLengths() throws IOException
+	{
+		byte[] input = HuffmanTestData.skewed(new Random(5), 10000);
+		int[] counts = HuffmanTestData.histogram(input);
+		HuffmanCodeTable table = new HuffmanCodeTable(HuffmanTestData.codes(counts));
+		HuffmanEncoder encoder = new HuffmanEncoder(table, new ByteArrayOutputStream());
+		long expected = 0;
+
+		for (int i = 0; i < counts.length; i++)
+		{
+			expected += (long) counts[i] * table.getLength(i);
+		}
+
+		encoder.encode(input, 0, input.length);
+
+		assertEquals(expected, encoder.getEncodedBits());
+	}
+
+	@Test
+	public void testTableAccessors()
+	{
+		HuffmanCodeTable table = new HuffmanCodeTable(new String[] {"0", null, "10", "11"});
+
+		assertEquals(4, table.getSymbolCount());
+		assertEquals("10", table.getCode(2));
+		assertNull(table.getCode(1));
+		assertEquals(0, table.getLength(1));
+		assertEquals(2, table.getLength(3));
+		assertFalse(table.hasPairs());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCodesMustBePrefixFree()
+	{
+		new HuffmanCodeTable(new String[] {"0", "01", "1"});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateCodesAreRejected()
+	{
+		new HuffmanCodeTable(new String[] {"0", "0"});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCodesMustNotExceedMaximumLength()
+	{
+		char[] code = new char[HuffmanCodeTable.MAX_CODE_LENGTH + 1];
+		Arrays.fill(code, '1');
+		new HuffmanCodeTable(new String[] {new String(code)});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPairLengthIsBounded()
+	{
+		new HuffmanCodeTable(new String[] {"0", "1"}, 32);
+	}
+
+	@Test
+	public void testEncoderRejectsSymbolWithoutCode() throws IOException
+	{
+		// Built without a code for 'z', as when a file grows a new byte value after its histogram was counted
+		byte[] counted = HuffmanTestData.skewed(new Random(7), 10000);
+		int[] counts = HuffmanTestData.histogram(counted);
+		counts['z'] = 0;
+		String[] codes = HuffmanTestData.codes(counts);
+
+		for (int pairLength : PAIR_LENGTHS)
+		{
+			// The 'z' is placed both after a byte with a code and at the end, where no pair can be formed
+			for (byte[] input : new byte[][] {{'a', 'z', 'a', 'a'}, {'a', 'a', 'z'}, {'z'}})
+			{
+				try
+				{
+					encode(input, new HuffmanCodeTable(codes, pairLength));
+					fail("Expected an IllegalStateException for pair length " + pairLength);
+				}
+				catch (IllegalStateException e)
+				{
+					assertTrue(e.getMessage(), e.getMessage().contains(" " + (int) 'z' + " "));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testStreamMethodsRequireOutputStream() throws IOException
+	{
+		HuffmanEncoder encoder = new HuffmanEncoder(new HuffmanCodeTable(new String[] {"0", "1"}));
+
+		try
+		{
+			encoder.encodeSymbol(1);
+			fail("Expected an IllegalStateException from encodeSymbol");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals(0, encoder.getEncodedBits());
+		}
+
+		try
+		{
+			encoder.finish();
+			fail("Expected an IllegalStateException from finish");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals(0, encoder.getEncodedBits());
+		}
+	}
+
+	@Test
+	public void testDecoderRejectsUnknownCode()
+	{
+		// Symbol 2 has no code, so the bits 11 lead nowhere
+		HuffmanCodeTable table = new HuffmanCodeTable(new String[] {"0", "10"});
+		HuffmanDecoder decoder = new HuffmanDecoder(table, 1);
+
+		try
+		{
+			decoder.decode(ByteBuffer.wrap(new byte[] {(byte) 0xC0}), ByteBuffer.allocate(16));
+			fail("Expected an IllegalStateException");
+		}
+		catch (IllegalStateException e)
+		{
+			assertFalse(decoder.isFinished());
+		}
+	}
+
+	@Test
+	public void testDecoderStopsAtEndOfInput() throws IOException
+	{
+		byte[] input = HuffmanTestData.skewed(new Random(6), 1000);
+		HuffmanCodeTable table = new HuffmanCodeTable(HuffmanTestData.codes(HuffmanTestData.histogram(input)));
+		byte[] encoded = encode(input, table);
+
+		HuffmanDecoder decoder = new HuffmanDecoder(table, END_OF_FILE);
+		ByteBuffer src = ByteBuffer.wrap(encoded, 0, encoded.length / 2);
+
+		assertFalse(decoder.decode(src, ByteBuffer.allocate(input.length)));
+		assertFalse(src.hasRemaining());
+		assertFalse(decoder.isFinished());
+	}
+
+	/**
+	 * Round trips the input through a table built from its own histogram, with every pair length.
+	 */
+	private static void assertRoundTrip(byte[] input) throws IOException
+	{
+		String[] codes = HuffmanTestData.codes(HuffmanTestData.histogram(input));
+
+		for (int pairLength : PAIR_LENGTHS)
+		{
+			assertRoundTrip(input, new HuffmanCodeTable(codes, pairLength));
+		}
+	}
+
+	/**
+	 * Round trips the input through the provided table, decoding through destination buffers of several sizes so
+	 * partially decoded codes are carried across calls.
+	 */
+	private static void assertRoundTrip(byte[] input, HuffmanCodeTable table) throws IOException
+	{
+		byte[] encoded = encode(input, table);
+
+		for (int bufferSize : new int[] {1, 7, 4096})
+		{
+			HuffmanDecoder decoder = new HuffmanDecoder(table, END_OF_FILE);
+			ByteBuffer src = ByteBuffer.wrap(encoded);
+			ByteBuffer dst = ByteBuffer.allocate(bufferSize);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			// The decoder only stops early with room left in the destination when the input is exhausted
+			while (!decoder.decode(src, dst))
+			{
+				assertFalse("Input ended before the end of file marker", dst.hasRemaining());
+				drain(dst, out);
+			}
+
+			drain(dst, out);
+			assertArrayEquals("Buffer size " + bufferSize, input, out.toByteArray());
+		}
+	}
+
+	private static byte[] encode(byte[] input, HuffmanCodeTable table) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HuffmanEncoder encoder = new HuffmanEncoder(table, out);
+
+		encoder.encode(input, 0, input.length);
+		encoder.encodeSymbol(END_OF_FILE);
+		encoder.finish();
+
+		return out.toByteArray();
+	}
+
+	private static void drain(ByteBuffer buffer, ByteArrayOutputStream out)
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			out.write(buffer.get());
+		}
+
+		buffer.clear();
+	}
+}
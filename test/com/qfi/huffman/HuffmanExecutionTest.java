@@ -0,0 +1,417 @@
+package com.qfi.huffman;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.Random;
+import java.util.Arrays;
+import java.nio.file.Files;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Round trips files through HuffmanExecution compression and decompression, including the sampled path and the
+ * failure paths which must leave the input untouched.
+ *
+ * The size of the large streaming round trip can be configured with the "huffman.test.size.mb" system property, for
+ * example -Dhuffman.test.size.mb=4096 to exercise files over 2 GB, and the number of generated files with the
+ * "huffman.test.seeds" system property.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanExecutionTest
+{
+	private static final String COMPRESS = "COMPRESS";
+	private static final String DECOMPRESS = "DECOMPRESS";
+	private static final int SEEDS = Integer.getInteger("huffman.test.seeds", 200);
+	private static final long LARGE_SIZE = Long.getLong("huffman.test.size.mb", 64) * 1024 * 1024;
+
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	@Test
+	public void testEmptyFile() throws IOException
+	{
+		assertRoundTrip(new byte[0]);
+	}
+
+	@Test
+	public void testSingleByte() throws IOException
+	{
+		assertRoundTrip(new byte[] {'\n'});
+	}
+
+	@Test
+	public void testSingleSymbol() throws IOException
+	{
+		byte[] content = new byte[200000];
+		Arrays.fill(content, (byte) 'a');
+		assertRoundTrip(content);
+	}
+
+	@Test
+	public void testAllByteValues() throws IOException
+	{
+		byte[] content = new byte[256 * 100];
+
+		for (int i = 0; i < content.length; i++)
+		{
+			content[i] = (byte) (255 - i);
+		}
+
+		assertRoundTrip(content);
+	}
+
+	@Test
+	public void testSkewedFile() throws IOException
+	{
+		byte[] content = HuffmanTestData.skewed(new Random(10), 1000000);
+		File file = assertRoundTrip(content);
+
+		assertEquals(content.length, file.length());
+	}
+
+	@Test
+	public void testRandomFile() throws IOException
+	{
+		byte[] content = new byte[1000000];
+		new Random(11).nextBytes(content);
+		assertRoundTrip(content);
+	}
+
+	@Test
+	public void testGeneratedFiles() throws IOException
+	{
+		double[] sampleRatios = {0, 0.01, 0.25};
+
+		// Files are slower to round trip than buffers, so a quarter as many are generated
+		for (int seed = 0; seed < SEEDS / 4; seed++)
+		{
+			Random random = new Random(seed);
+			byte[] content = HuffmanTestData.generate(random);
+			File file = write("generated.bin", content);
+			double sampleRatio = sampleRatios[random.nextInt(sampleRatios.length)];
+			String message = "Seed " + seed + " with sample ratio " + sampleRatio;
+
+			run(COMPRESS, file, sampleRatio);
+
+			assertTrue(message, statFile(file).isFile());
+
+			run(DECOMPRESS, file, 0);
+
+			assertArrayEquals(message, content, Files.readAllBytes(file.toPath()));
+			assertEquals(message, 1, m_folder.getRoot().list().length);
+		}
+	}
+
+	@Test
+	public void testCompressionShrinksSkewedFile() throws IOException
+	{
+		byte[] content = HuffmanTestData.skewed(new Random(12), 1000000);
+		File file = write("skewed.log", content);
+
+		run(COMPRESS, file, 0);
+
+		assertTrue("Compressed size " + file.length(), file.length() < content.length / 2);
+		assertTrue(statFile(file).isFile());
+	}
+
+	@Test
+	public void testFileInSubdirectory() throws IOException
+	{
+		File directory = m_folder.newFolder("nested");
+		File file = new File(directory, "input.txt");
+		byte[] content = HuffmanTestData.skewed(new Random(13), 50000);
+		Files.write(file.toPath(), content);
+
+		run(COMPRESS, file, 0);
+		run(DECOMPRESS, file, 0);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertEquals(1, directory.list().length);
+	}
+
+	@Test
+	public void testSampledFile() throws IOException
+	{
+		byte[] content = HuffmanTestData.skewed(new Random(14), 4 * 1024 * 1024);
+		File file = write("sampled.log", content);
+
+		run(COMPRESS, file, 0.01);
+
+		// Sampled frequencies are estimates, so they differ from the exact count of a common byte
+		assertFalse(statLine(file, ' ').contains(" Freq: " + HuffmanTestData.histogram(content)[' '] + " "));
+
+		run(DECOMPRESS, file, 0);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void testSampleDriftFallsBackToFullScan() throws IOException
+	{
+		// Every sampled chunk lands on a run of 'a' while the rest of each block is random
+		int blockSize = 64 * 1024;
+		byte[] content = new byte[16 * blockSize];
+		Random random = new Random(15);
+		random.nextBytes(content);
+
+		for (int block = 0; block < 16; block++)
+		{
+			Arrays.fill(content, block * blockSize, block * blockSize + 4096, (byte) 'a');
+		}
+
+		File file = write("drift.bin", content);
+
+		run(COMPRESS, file, 1.0 / 16);
+
+		// The table is rebuilt from a full scan, so the statistics hold exact counts
+		assertTrue(statLine(file, 'a').contains(" Freq: " + HuffmanTestData.histogram(content)['a'] + " "));
+
+		run(DECOMPRESS, file, 0);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void testChangingContentDoesNotFallBack() throws IOException
+	{
+		int half = 4 * 1024 * 1024;
+		byte[] text = HuffmanTestData.skewed(new Random(24), half);
+		byte[] random = new byte[half];
+		new Random(25).nextBytes(random);
+
+		// The halves cost very different bits per byte, but each half costs what its own samples predict
+		for (byte[][] halves : new byte[][][] {{text, random}, {random, text}})
+		{
+			byte[] content = Arrays.copyOf(halves[0], 2 * half);
+			System.arraycopy(halves[1], 0, content, half, half);
+			File file = write("mixed.log", content);
+
+			run(COMPRESS, file, 0.02);
+
+			// A fall back to a full scan would have written the exact count of the byte
+			assertFalse(statLine(file, ' ').contains(" Freq: " + HuffmanTestData.histogram(content)[' '] + " "));
+
+			run(DECOMPRESS, file, 0);
+
+			assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		}
+	}
+
+	@Test
+	public void testTablesAreSharedByFilesWithTheSameCodeLengths() throws IOException
+	{
+		// Different counts of different bytes which still build trees with code lengths of 1, 2, 3 and 3 bits
+		byte[] first = new byte[100];
+		byte[] second = new byte[100];
+		Arrays.fill(first, 0, 50, (byte) 'a');
+		Arrays.fill(first, 50, 80, (byte) 'b');
+		Arrays.fill(first, 80, 100, (byte) 'c');
+		Arrays.fill(second, 0, 60, (byte) 'a');
+		Arrays.fill(second, 60, 85, (byte) 'b');
+		Arrays.fill(second, 85, 100, (byte) 'c');
+
+		File firstFile = write("first.log", first);
+		File secondFile = write("second.log", second);
+		HuffmanTableCache cache = HuffmanTableCache.getInstance();
+
+		run(COMPRESS, firstFile, 0);
+		long hits = cache.getHits();
+		run(COMPRESS, secondFile, 0);
+
+		assertEquals(hits + 1, cache.getHits());
+		assertEquals(4, Files.readAllLines(statFile(firstFile).toPath()).size());
+		assertEquals(statLine(firstFile, 'c').replaceAll(" Freq: \\d+", ""),
+			statLine(secondFile, 'c').replaceAll(" Freq: \\d+", ""));
+
+		run(DECOMPRESS, firstFile, 0);
+		hits = cache.getHits();
+		run(DECOMPRESS, secondFile, 0);
+
+		assertEquals(hits + 1, cache.getHits());
+		assertArrayEquals(first, Files.readAllBytes(firstFile.toPath()));
+		assertArrayEquals(second, Files.readAllBytes(secondFile.toPath()));
+	}
+
+	@Test
+	public void testStatisticsFailureKeepsInput() throws IOException
+	{
+		byte[] content = HuffmanTestData.skewed(new Random(16), 100000);
+		File file = write("x", content);
+		File blocker = m_folder.newFolder(".x");
+
+		run(COMPRESS, file, 0);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertTrue(blocker.isDirectory());
+		assertEquals(2, m_folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testFileGrownAfterCountingIsNotReplaced() throws IOException
+	{
+		byte[] content = new byte[100000];
+		Arrays.fill(content, (byte) 'a');
+		File file = write("growing.log", content);
+
+		HuffmanExecution execution = new HuffmanExecution(COMPRESS, file.getPath());
+		execution.setSampleRatio(0);
+		execution.countFrequencies();
+
+		// A byte which was not counted has no code, so the encoding must fail rather than drop it
+		byte[] grown = Arrays.copyOf(content, content.length + 1);
+		grown[content.length] = 'b';
+		Files.write(file.toPath(), grown);
+
+		execution.buildCodes();
+		execution.writeCompressedFile();
+
+		assertArrayEquals(grown, Files.readAllBytes(file.toPath()));
+		assertEquals(1, m_folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testTruncatedFileIsNotReplaced() throws IOException
+	{
+		File file = write("truncated.log", HuffmanTestData.skewed(new Random(17), 100000));
+
+		run(COMPRESS, file, 0);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(file.length() / 2);
+		}
+
+		byte[] truncated = Files.readAllBytes(file.toPath());
+
+		run(DECOMPRESS, file, 0);
+
+		assertArrayEquals(truncated, Files.readAllBytes(file.toPath()));
+		assertTrue(statFile(file).isFile());
+		assertEquals(2, m_folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testMissingStatisticsFileIsNotDecompressed() throws IOException
+	{
+		byte[] content = HuffmanTestData.skewed(new Random(18), 1000);
+		File file = write("plain.txt", content);
+
+		run(DECOMPRESS, file, 0);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertEquals(1, m_folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testLargeFileIsStreamed() throws IOException
+	{
+		File file = m_folder.newFile("large.log");
+		byte[] expected = HuffmanTestData.writeSkewedFile(file, LARGE_SIZE, 19);
+
+		run(COMPRESS, file, 0);
+
+		assertTrue(file.length() < LARGE_SIZE);
+
+		run(DECOMPRESS, file, 0);
+
+		assertEquals(LARGE_SIZE, file.length());
+		assertArrayEquals(expected, HuffmanTestData.digest(file));
+		assertEquals(1, m_folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testCountsOver2GBAreScaled()
+	{
+		long[] counts = new long[256];
+		counts[0] = 3L * Integer.MAX_VALUE;
+		counts[1] = Integer.MAX_VALUE;
+		counts[2] = 1;
+
+		int[] frequencies = HuffmanExecution.scaleFrequencies(counts);
+		long total = 1;
+
+		for (int frequency : frequencies)
+		{
+			total += frequency;
+		}
+
+		assertTrue("Total " + total, total <= Integer.MAX_VALUE);
+		assertTrue(frequencies[0] > 2 * frequencies[1]);
+		assertEquals(1, frequencies[2]);
+		assertEquals(0, frequencies[3]);
+	}
+
+	@Test
+	public void testCountsUnder2GBAreExact()
+	{
+		long[] counts = new long[256];
+		counts['a'] = 1000;
+		counts['b'] = 1;
+
+		int[] frequencies = HuffmanExecution.scaleFrequencies(counts);
+
+		assertEquals(1000, frequencies['a']);
+		assertEquals(1, frequencies['b']);
+	}
+
+	/**
+	 * Compresses and decompresses the content and checks that it is restored with no files left behind.
+	 */
+	private File assertRoundTrip(byte[] content) throws IOException
+	{
+		File file = write("input.bin", content);
+
+		run(COMPRESS, file, 0);
+
+		assertTrue(statFile(file).isFile());
+		assertEquals(2, m_folder.getRoot().list().length);
+
+		run(DECOMPRESS, file, 0);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertEquals(1, m_folder.getRoot().list().length);
+
+		return file;
+	}
+
+	private File write(String name, byte[] content) throws IOException
+	{
+		File file = new File(m_folder.getRoot(), name);
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	private static void run(String mode, File file, double sampleRatio)
+	{
+		HuffmanExecution execution = new HuffmanExecution(mode, file.getPath());
+		execution.setSampleRatio(sampleRatio);
+		execution.run();
+	}
+
+	private static File statFile(File file)
+	{
+		return new File(file.getParentFile(), "." + file.getName());
+	}
+
+	private static String statLine(File file, char symbol) throws IOException
+	{
+		for (String line : Files.readAllLines(statFile(file).toPath()))
+		{
+			if (line.startsWith("Node: " + (int) symbol + " "))
+			{
+				return line;
+			}
+		}
+
+		throw new AssertionError("No statistics line for symbol " + (int) symbol);
+	}
+}
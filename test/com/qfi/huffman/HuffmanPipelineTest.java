@@ -0,0 +1,88 @@
+package com.qfi.huffman;
+
+import java.io.File;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.Random;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.io.IOException;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Round trips several files at once through the staged HuffmanPipeline.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanPipelineTest
+{
+	private static final int FILE_COUNT = 12;
+
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTripOfManyFiles() throws IOException
+	{
+		Random random = new Random(20);
+		List<String> paths = new ArrayList<>();
+		List<byte[]> contents = new ArrayList<>();
+
+		for (int i = 0; i < FILE_COUNT; i++)
+		{
+			// Every third file is identical so the pipeline also exercises shared cached tables
+			byte[] content = (i % 3 == 0) ? HuffmanTestData.skewed(new Random(21), 100000)
+				: HuffmanTestData.skewed(random, random.nextInt(200000));
+			File file = new File(m_folder.getRoot(), "file" + i + ".log");
+
+			Files.write(file.toPath(), content);
+			paths.add(file.getPath());
+			contents.add(content);
+		}
+
+		new HuffmanPipeline("COMPRESS", paths).run();
+
+		assertEquals(2 * FILE_COUNT, m_folder.getRoot().list().length);
+
+		new HuffmanPipeline("DECOMPRESS", paths).run();
+
+		assertEquals(FILE_COUNT, m_folder.getRoot().list().length);
+
+		for (int i = 0; i < FILE_COUNT; i++)
+		{
+			assertArrayEquals(paths.get(i), contents.get(i), Files.readAllBytes(new File(paths.get(i)).toPath()));
+		}
+	}
+
+	@Test
+	public void testDuplicatePathsAreProcessedOnce() throws IOException
+	{
+		byte[] content = HuffmanTestData.skewed(new Random(22), 100000);
+		File directory = m_folder.newFolder("logs");
+		File file = new File(directory, "a.log");
+		Files.write(file.toPath(), content);
+
+		// The same file given directly, through a redundant directory element and through a symbolic link
+		File link = new File(m_folder.getRoot(), "link.log");
+		Files.createSymbolicLink(link.toPath(), file.toPath());
+		List<String> paths = Arrays.asList(file.getPath(), new File(directory, "../logs/a.log").getPath(),
+			link.getPath());
+
+		assertEquals(Arrays.asList(file.getPath()), HuffmanPipeline.getDistinctPaths(paths));
+
+		new HuffmanPipeline("COMPRESS", paths).run();
+
+		assertEquals(2, directory.list().length);
+
+		new HuffmanPipeline("DECOMPRESS", paths).run();
+
+		assertEquals(1, directory.list().length);
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+	}
+}
@@ -0,0 +1,80 @@
+package com.qfi.huffman;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the lookups, eviction and counters of HuffmanTableCache.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanTableCacheTest
+{
+	private static final HuffmanCodeTable TABLE = new HuffmanCodeTable(new String[] {"0", "1"});
+
+	@Test
+	public void testEncodeTablesAreKeyedByValue()
+	{
+		HuffmanTableCache cache = new HuffmanTableCache(4);
+		int[] codeLengths = {1, 1};
+
+		cache.putEncodeTable(codeLengths, TABLE);
+		codeLengths[0] = 2;
+
+		assertNull(cache.getEncodeTable(codeLengths));
+		assertSame(TABLE, cache.getEncodeTable(new int[] {1, 1}));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testDecodeTablesAreKeyedByCodeLengths()
+	{
+		HuffmanTableCache cache = new HuffmanTableCache(4);
+
+		cache.putDecodeTable(new int[] {1, 1}, TABLE);
+
+		assertSame(TABLE, cache.getDecodeTable(new int[] {1, 1}));
+		assertNull(cache.getDecodeTable(new int[] {1, 2, 2}));
+		assertNull(cache.getEncodeTable(new int[] {1, 1}));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedTableIsEvicted()
+	{
+		HuffmanTableCache cache = new HuffmanTableCache(2);
+
+		cache.putDecodeTable(new int[] {1}, TABLE);
+		cache.putDecodeTable(new int[] {2}, TABLE);
+		cache.getDecodeTable(new int[] {1});
+		cache.putDecodeTable(new int[] {3}, TABLE);
+
+		assertSame(TABLE, cache.getDecodeTable(new int[] {1}));
+		assertNull(cache.getDecodeTable(new int[] {2}));
+		assertSame(TABLE, cache.getDecodeTable(new int[] {3}));
+	}
+
+	@Test
+	public void testClearResetsTablesAndCounters()
+	{
+		HuffmanTableCache cache = new HuffmanTableCache(2);
+
+		cache.putEncodeTable(new int[] {1}, TABLE);
+		cache.getEncodeTable(new int[] {1});
+		cache.clear();
+
+		assertEquals(0, cache.getHits());
+		assertNull(cache.getEncodeTable(new int[] {1}));
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCapacityIsRejected()
+	{
+		new HuffmanTableCache(-1);
+	}
+}
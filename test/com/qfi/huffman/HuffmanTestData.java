@@ -0,0 +1,221 @@
+package com.qfi.huffman;
+
+import java.io.File;
+import java.util.Random;
+import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Generators and helpers shared by the Huffman tests. Generated data is deterministic for a given seed, and large
+ * files are written and digested in chunks so their size is not limited by the heap.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+final class HuffmanTestData
+{
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final byte[] SKEWED_ALPHABET = buildSkewedAlphabet();
+
+	private HuffmanTestData()
+	{
+	}
+
+	/**
+	 * Generates bytes drawn from a skewed, log like distribution in which spaces and lower case letters dominate but
+	 * every byte value appears.
+	 *
+	 * @param random - The source of randomness.
+	 * @param length - The number of bytes to generate.
+	 * @return byte[]
+	 */
+	static byte[] skewed(Random random, int length)
+	{
+		byte[] data = new byte[length];
+		fillSkewed(random, data, length);
+		return data;
+	}
+
+	/**
+	 * Generates an input whose length, alphabet and skew are all drawn from the provided source of randomness. Lengths
+	 * are mostly short, so corner cases around partial bytes and tiny trees come up often, with an occasional input of
+	 * up to 200000 bytes. The alphabet is a random subset of 1 to 256 byte values drawn with Zipf like weights, from
+	 * uniform to a single dominant byte, and some inputs are made of long runs of the same byte.
+	 *
+	 * @param random - The source of randomness, seeded by the caller so a failing input can be reproduced.
+	 * @return byte[]
+	 */
+	static byte[] generate(Random random)
+	{
+		int[] maxLengths = {16, 4096, 65536, 200000};
+		int length = random.nextInt(maxLengths[random.nextInt(maxLengths.length)] + 1);
+		byte[] alphabet = new byte[1 + random.nextInt(256)];
+		double[] weights = new double[alphabet.length];
+		double exponent = 4 * random.nextDouble();
+		double total = 0;
+		byte[] bytes = new byte[256];
+
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte) i;
+		}
+
+		// A partial shuffle picks the alphabet, the order of which decides which bytes are the most frequent
+		for (int i = 0; i < alphabet.length; i++)
+		{
+			int j = i + random.nextInt(bytes.length - i);
+			byte swap = bytes[i];
+			bytes[i] = bytes[j];
+			bytes[j] = swap;
+			alphabet[i] = bytes[i];
+			total += 1 / Math.pow(i + 1, exponent);
+			weights[i] = total;
+		}
+
+		byte[] data = new byte[length];
+		int run = random.nextInt(4) == 0 ? 1 + random.nextInt(1000) : 1;
+
+		for (int i = 0; i < length; i += run)
+		{
+			int index = Arrays.binarySearch(weights, random.nextDouble() * total);
+			byte value = alphabet[Math.min(alphabet.length - 1, (index < 0) ? -index - 1 : index)];
+			Arrays.fill(data, i, Math.min(length, i + run), value);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Counts the occurrences of every byte value.
+	 *
+	 * @param data - The bytes to count.
+	 * @return int[] - The counts indexed by byte value.
+	 */
+	static int[] histogram(byte[] data)
+	{
+		int[] counts = new int[256];
+
+		for (byte b : data)
+		{
+			counts[b & 0xFF]++;
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Builds the string based codes for the provided counts the same way compression does.
+	 *
+	 * @param counts - The counts indexed by byte value.
+	 * @return String[] - The codes indexed by symbol, including the end of file marker.
+	 */
+	static String[] codes(int[] counts)
+	{
+		HuffmanExecution execution = new HuffmanExecution("COMPRESS", "");
+		return execution.getCode(execution.generateTree(counts));
+	}
+
+	/**
+	 * Writes a file of skewed bytes in chunks and returns the SHA-256 digest of its content.
+	 *
+	 * @param file - The file to write.
+	 * @param length - The number of bytes to write.
+	 * @param seed - The seed of the generated content.
+	 * @return byte[] - The digest of the written content.
+	 * @throws IOException - If writing the file fails.
+	 */
+	static byte[] writeSkewedFile(File file, long length, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		MessageDigest digest = newDigest();
+		byte[] chunk = new byte[CHUNK_SIZE];
+
+		try (OutputStream out = Files.newOutputStream(file.toPath()))
+		{
+			for (long written = 0; written < length; written += chunk.length)
+			{
+				int count = (int) Math.min(chunk.length, length - written);
+				fillSkewed(random, chunk, count);
+				digest.update(chunk, 0, count);
+				out.write(chunk, 0, count);
+			}
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Returns the SHA-256 digest of the content of a file, read in chunks.
+	 *
+	 * @param file - The file to digest.
+	 * @return byte[]
+	 * @throws IOException - If reading the file fails.
+	 */
+	static byte[] digest(File file) throws IOException
+	{
+		int read;
+		MessageDigest digest = newDigest();
+		byte[] chunk = new byte[CHUNK_SIZE];
+
+		try (InputStream in = Files.newInputStream(file.toPath()))
+		{
+			while ((read = in.read(chunk)) != -1)
+			{
+				digest.update(chunk, 0, read);
+			}
+		}
+
+		return digest.digest();
+	}
+
+	private static void fillSkewed(Random random, byte[] data, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			data[i] = SKEWED_ALPHABET[random.nextInt(SKEWED_ALPHABET.length)];
+		}
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] buildSkewedAlphabet()
+	{
+		byte[] alphabet = new byte[4096];
+		int index = 0;
+
+		for (int i = 0; i < 256; i++)
+		{
+			alphabet[index++] = (byte) i;
+		}
+
+		for (int i = 0; i < 26; i++)
+		{
+			for (int j = 0; j < 26 - i; j++)
+			{
+				alphabet[index++] = (byte) ('a' + i);
+			}
+		}
+
+		while (index < alphabet.length)
+		{
+			alphabet[index++] = (byte) ((index % 9 == 0) ? '\n' : ' ');
+		}
+
+		return alphabet;
+	}
+}
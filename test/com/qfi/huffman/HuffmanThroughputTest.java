@@ -0,0 +1,178 @@
+package com.qfi.huffman;
+
+import java.io.File;
+import org.junit.Test;
+import org.junit.Assume;
+import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import org.junit.ClassRule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.io.OutputStream;
+import org.junit.BeforeClass;
+import org.apache.logging.log4j.Logger;
+import org.junit.rules.TemporaryFolder;
+import org.apache.logging.log4j.LogManager;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the throughput of each compression and decompression stage over a generated file and fails when a stage is
+ * slower than its recorded baseline by more than the tolerance. Each stage is timed several times after a warm up run
+ * and the fastest run is compared, so a busy machine does not cause spurious failures. The pack stages time the
+ * HuffmanEncoder loops alone, between in memory buffers, so packing can be compared separately from file I/O. They
+ * are timed both with the scalar loop and with the Vector API kernel of HuffmanVectorKernels, which is resolved by the
+ * --add-modules jdk.incubator.vector argument of the surefire configuration.
+ *
+ * These tests only run with the performance profile: mvn test -P performance. The baselines, in MB/s, are recorded in
+ * the pom as the "huffman.test.*.mbps" properties, and the tolerance as the "huffman.test.tolerance" percentage. On
+ * other hardware, record new baselines by passing the measured figures, which are logged for every stage, with -D.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanThroughputTest
+{
+	private static final int RUNS = 3;
+	private static final long SIZE = 32 * 1024 * 1024;
+	private static final double TOLERANCE = Double.parseDouble(System.getProperty("huffman.test.tolerance", "25"));
+	private static final Logger m_logger = LogManager.getLogger(HuffmanThroughputTest.class);
+
+	@ClassRule
+	public static TemporaryFolder m_folder = new TemporaryFolder();
+
+	private static File m_input;
+	private static byte[] m_bytes;
+	private static Path m_compressed;
+	private static HuffmanCodeTable m_table;
+	private static HuffmanExecution m_execution;
+
+	@BeforeClass
+	public static void setUp() throws IOException
+	{
+		m_input = m_folder.newFile("input.log");
+		HuffmanTestData.writeSkewedFile(m_input, SIZE, 30);
+		m_bytes = Files.readAllBytes(m_input.toPath());
+
+		m_execution = new HuffmanExecution("COMPRESS", m_input.getPath());
+		m_table = new HuffmanCodeTable(HuffmanTestData.codes(m_execution.getCharFrequencies(m_input)));
+		m_compressed = m_folder.newFile("compressed").toPath();
+
+		try (InputStream in = Files.newInputStream(m_input.toPath()); OutputStream out = Files.newOutputStream(m_compressed))
+		{
+			m_execution.createCompressedFile(m_table, in, out);
+		}
+	}
+
+	@Test
+	public void testHistogramThroughput() throws Exception
+	{
+		assertThroughput("histogram", "huffman.test.histogram.mbps", () -> m_execution.getCharFrequencies(m_input));
+	}
+
+	@Test
+	public void testPackThroughput() throws Exception
+	{
+		assertThroughput("pack", "huffman.test.pack.mbps", () -> pack(false));
+	}
+
+	@Test
+	public void testVectorPackThroughput() throws Exception
+	{
+		assumeVectorModule();
+		assertThroughput("vector pack", "huffman.test.vector.pack.mbps", () -> pack(true));
+	}
+
+	@Test
+	public void testEncodeThroughput() throws Exception
+	{
+		assertThroughput("encode", "huffman.test.encode.mbps", () ->
+		{
+			try (InputStream in = Files.newInputStream(m_input.toPath()); OutputStream out = OutputStream.nullOutputStream())
+			{
+				m_execution.createCompressedFile(m_table, in, out);
+			}
+		});
+	}
+
+	@Test
+	public void testDecodeThroughput() throws Exception
+	{
+		Path decompressed = m_folder.newFile("decompressed").toPath();
+
+		assertThroughput("decode", "huffman.test.decode.mbps", () ->
+		{
+			assertTrue(m_execution.decompressFile(m_table, m_compressed, decompressed));
+		});
+
+		assertEquals(SIZE, Files.size(decompressed));
+	}
+
+	/**
+	 * Packs the whole input into a reused direct buffer, with the Vector API kernels or the scalar loop.
+	 *
+	 * @param vectorized - A flag representing if the Vector API kernels are used.
+	 */
+	private static void pack(boolean vectorized)
+	{
+		ByteBuffer src = ByteBuffer.wrap(m_bytes);
+		ByteBuffer dst = ByteBuffer.allocateDirect(64 * 1024);
+		HuffmanEncoder encoder = new HuffmanEncoder(m_table, null, vectorized);
+
+		while (src.hasRemaining())
+		{
+			encoder.encode(src, dst);
+			dst.clear();
+		}
+	}
+
+	private static void assumeVectorModule()
+	{
+		Assume.assumeTrue("The jdk.incubator.vector module is not resolved",
+			ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+	}
+
+	/**
+	 * Runs the stage once to warm up and then RUNS times, failing if the fastest run is slower than the baseline by
+	 * more than the tolerance.
+	 *
+	 * @param stage - The name of the stage, used in the log and failure messages.
+	 * @param property - The system property holding the baseline in MB/s.
+	 * @param body - The stage, which processes SIZE uncompressed bytes.
+	 * @throws Exception - If the stage fails.
+	 */
+	private static void assertThroughput(String stage, String property, Stage body) throws Exception
+	{
+		double baseline = Double.parseDouble(System.getProperty(property, "0"));
+		double threshold = baseline * (1 - TOLERANCE / 100);
+		long best = Long.MAX_VALUE;
+
+		body.run();
+
+		for (int i = 0; i < RUNS; i++)
+		{
+			long start = System.nanoTime();
+			body.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		double mbps = (SIZE / (1024.0 * 1024.0)) / (best / 1e9);
+
+		m_logger.info(String.format("The %s stage ran at %.1f MB/s against a baseline of %.1f MB/s.", stage, mbps,
+			baseline));
+
+		assertTrue(String.format("The %s stage ran at %.1f MB/s, more than %.0f%% below the baseline of %.1f MB/s set by %s.",
+			stage, mbps, TOLERANCE, baseline, property), mbps >= threshold);
+	}
+
+	/**
+	 * A stage being timed.
+	 */
+	@FunctionalInterface
+	private interface Stage
+	{
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,152 @@
+package com.qfi.huffman;
+
+import org.junit.Test;
+import org.junit.Before;
+import java.util.Random;
+import org.junit.Assume;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that HuffmanEncoder packs exactly the same bytes with the Vector API kernel of HuffmanVectorKernels as with
+ * the scalar loops, with and without pair tables and whatever the destination buffer. The tests are skipped when the
+ * JVM was started without --add-modules jdk.incubator.vector, which the surefire configuration passes.
+ *
+ * The number of generated inputs can be configured with the "huffman.test.seeds" system property.
+ *
+ * @author Vincent.Nigro
+ * @version 1.0.0
+ */
+public class HuffmanVectorKernelsTest
+{
+	private static final int END_OF_FILE = 256;
+	private static final int[] PAIR_LENGTHS = {0, 12, 24};
+	private static final int SEEDS = Integer.getInteger("huffman.test.seeds", 200);
+
+	@Before
+	public void assumeVectorModule()
+	{
+		Assume.assumeTrue("The jdk.incubator.vector module is not resolved",
+			ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+	}
+
+	@Test
+	public void testEncoderOutputMatchesScalarLoop()
+	{
+		for (int seed = 0; seed < SEEDS / 4; seed++)
+		{
+			byte[] input = HuffmanTestData.generate(new Random(seed));
+			String[] codes = HuffmanTestData.codes(HuffmanTestData.histogram(input));
+
+			for (int pairLength : PAIR_LENGTHS)
+			{
+				assertSameOutput("Input generated from seed " + seed + " with pair length " + pairLength, input,
+					new HuffmanCodeTable(codes, pairLength));
+			}
+		}
+	}
+
+	@Test
+	public void testCodesLongerThan32Bits()
+	{
+		// The counts of testDeepTree in HuffmanCodeTableTest, whose longest codes exceed 40 bits
+		int[] counts = new int[256];
+		counts[0] = 2;
+		counts[1] = 3;
+
+		for (int i = 2; i < 41; i++)
+		{
+			counts[i] = counts[i - 1] + counts[i - 2] + 1;
+		}
+
+		byte[] input = new byte[41 * 1000];
+
+		for (int i = 0; i < input.length; i++)
+		{
+			// Mostly short codes, with every long code appearing in some blocks
+			input[i] = (byte) ((i % 7 == 0) ? (i / 7) % 41 : 40);
+		}
+
+		assertSameOutput("Deep tree", input, new HuffmanCodeTable(HuffmanTestData.codes(counts)));
+	}
+
+	@Test
+	public void testEncoderRejectsSymbolWithoutCode()
+	{
+		byte[] counted = HuffmanTestData.skewed(new Random(7), 10000);
+		int[] counts = HuffmanTestData.histogram(counted);
+		counts['z'] = 0;
+		HuffmanCodeTable table = new HuffmanCodeTable(HuffmanTestData.codes(counts));
+
+		// The 'z' is placed at the start, the middle and the end of a block, and in the scalar tail
+		int blockSize = HuffmanVectorKernels.BLOCK_SIZE;
+
+		for (int index : new int[] {0, blockSize / 2, blockSize - 1, blockSize + 1})
+		{
+			byte[] input = new byte[blockSize + 2];
+			System.arraycopy(counted, 0, input, 0, input.length);
+			input[index] = 'z';
+
+			try
+			{
+				new HuffmanEncoder(table, null, true).encode(ByteBuffer.wrap(input), ByteBuffer.allocate(64 * 1024));
+				fail("Expected an IllegalStateException for index " + index);
+			}
+			catch (IllegalStateException e)
+			{
+				assertTrue(e.getMessage(), e.getMessage().contains(" " + (int) 'z' + " "));
+			}
+		}
+	}
+
+	/**
+	 * Encodes the input with the kernel and with the scalar loops, through heap and direct destination buffers of either
+	 * byte order, some too small for a block, and checks the packed bytes are identical.
+	 */
+	private static void assertSameOutput(String message, byte[] input, HuffmanCodeTable table)
+	{
+		byte[] expected = encode(input, table, false, ByteBuffer.allocate(64 * 1024));
+
+		assertArrayEquals(message, expected, encode(input, table, true, ByteBuffer.allocate(64 * 1024)));
+		assertArrayEquals(message, expected, encode(input, table, true,
+			ByteBuffer.allocateDirect(4096).order(ByteOrder.LITTLE_ENDIAN)));
+		assertArrayEquals(message, expected, encode(input, table, true,
+			ByteBuffer.allocateDirect(HuffmanEncoder.MAX_SYMBOL_BYTES + 3)));
+	}
+
+	private static byte[] encode(byte[] input, HuffmanCodeTable table, boolean vectorized, ByteBuffer dst)
+	{
+		HuffmanEncoder encoder = new HuffmanEncoder(table, null, vectorized);
+		ByteBuffer src = ByteBuffer.wrap(input);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		while (src.hasRemaining())
+		{
+			encoder.encode(src, dst);
+			drain(dst, out);
+		}
+
+		encoder.encodeSymbol(END_OF_FILE, dst);
+		encoder.finish(dst);
+		drain(dst, out);
+
+		return out.toByteArray();
+	}
+
+	private static void drain(ByteBuffer buffer, ByteArrayOutputStream out)
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			out.write(buffer.get());
+		}
+
+		buffer.clear();
+	}
+}